@@ -83,6 +83,26 @@ public abstract class Query
 	 */
 	abstract public boolean isSelectDistinct();
 	
+	/**
+	 * Get the maximum number of solutions (LIMIT) of the query.
+	 * 
+	 * @return The limit or -1 if the number of solutions is not limited.
+	 */
+	public int getLimit()
+	{
+		return -1;
+	}
+	
+	/**
+	 * Get the number of solutions that are skipped (OFFSET) before solutions are returned.
+	 * 
+	 * @return The offset, 0 if no offset has been specified.
+	 */
+	public int getOffset()
+	{
+		return 0;
+	}
+	
 	/**
 	 * Print the SPARQL-DL query as string.
 	 * 
@@ -23,6 +23,8 @@ public class QueryArgument {
 
     private QueryArgumentType type;
 
+    private int hash;
+
     public QueryArgument(IRI value) {
         this.type = QueryArgumentType.URI;
         this.value = value;
@@ -198,15 +200,26 @@ public class QueryArgument {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryArgument)) {
+            return false;
+        }
         QueryArgument arg = (QueryArgument) obj;
-        return value.equals(arg.value) && this.type == arg.type;
+        return this.type == arg.type && value.equals(arg.value);
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 31 * type.hashCode() + hash;
-        hash = 31 * value.hashCode() + hash;
+        // arguments are looked up for every candidate binding, so the hash is only computed once
+        int hash = this.hash;
+        if (hash == 0) {
+            hash = 7;
+            hash = 31 * type.hashCode() + hash;
+            hash = 31 * value.hashCode() + hash;
+            this.hash = hash;
+        }
         return hash;
     }
 
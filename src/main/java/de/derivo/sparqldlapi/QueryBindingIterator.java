@@ -0,0 +1,33 @@
+package de.derivo.sparqldlapi;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+/**
+ * An iterator over the solutions of a query that computes one binding at a time.
+ * Iterators should be closed if they are abandoned before all solutions have been consumed.
+ */
+public interface QueryBindingIterator extends AutoCloseable
+{
+	/**
+	 * Check whether there is another solution.
+	 * This may trigger the evaluation of the query up to the next solution.
+	 * 
+	 * @return True if there is another solution.
+	 */
+	public boolean hasNext()
+		throws QueryEngineException;
+	
+	/**
+	 * Get the next solution.
+	 * 
+	 * @return The next binding.
+	 * @throws java.util.NoSuchElementException If there are no more solutions.
+	 */
+	public QueryBinding next()
+		throws QueryEngineException;
+	
+	/**
+	 * Stop the evaluation and release all state that is still held by the iterator.
+	 */
+	public void close();
+}
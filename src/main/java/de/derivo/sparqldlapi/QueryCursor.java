@@ -0,0 +1,19 @@
+package de.derivo.sparqldlapi;
+
+/**
+ * A query result whose solutions are computed while they are consumed.
+ * The solutions can only be consumed once: either by streaming them with 
+ * {@link #iterator()} or {@link #stream()}, or by materializing them with one
+ * of the other methods of QueryResult (e.g. size() or toXML()).
+ * A cursor should be closed if it is abandoned before all solutions have been consumed.
+ * 
+ * Errors that occur while streaming are reported as 
+ * {@link de.derivo.sparqldlapi.exceptions.UncheckedQueryEngineException}.
+ */
+public interface QueryCursor extends QueryResult, AutoCloseable
+{
+	/**
+	 * Stop the evaluation of the query and release all state that is still held by the cursor.
+	 */
+	public void close();
+}
@@ -4,10 +4,16 @@
 
 package de.derivo.sparqldlapi;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+import de.derivo.sparqldlapi.impl.QueryCursorImpl;
 import de.derivo.sparqldlapi.impl.QueryEngineImpl;
 
 /**
@@ -42,6 +48,15 @@ public abstract class QueryEngine
 		return new QueryEngineImpl(manager, reasoner, strict);
 	}
 	
+	/**
+	 * Release the engine.  An engine may listen to the changes of the ontology to keep its indexes up to date,
+	 * so every engine should be disposed once it is not needed anymore.  The engine must not be used afterwards.
+	 * The default implementation does nothing.
+	 */
+	public void dispose()
+	{
+	}
+	
 	/**
 	 * Execute a sparql-dl query and generate the result set.
 	 * 
@@ -50,4 +65,136 @@ public abstract class QueryEngine
 	 */
 	public abstract QueryResult execute(Query query)
 		throws QueryEngineException;
+	
+	/**
+	 * Execute a sparql-dl query lazily.
+	 * Solutions are only computed when they are pulled from the returned iterator.
+	 * The default implementation executes the query and iterates over the result set, 
+	 * engines that can compute solutions one at a time should override it.
+	 * 
+	 * @param query
+	 * @return An iterator over the solutions of the query.
+	 */
+	public QueryBindingIterator iterate(Query query)
+		throws QueryEngineException
+	{
+		final Iterator<QueryBinding> solutions = execute(query).iterator();
+		return new QueryBindingIterator() {
+			public boolean hasNext()
+			{
+				return solutions.hasNext();
+			}
+
+			public QueryBinding next()
+			{
+				return solutions.next();
+			}
+
+			public void close()
+			{
+			}
+		};
+	}
+	
+	/**
+	 * Execute a sparql-dl query and stream the result set.
+	 * The solutions are computed while they are consumed from the returned cursor.
+	 * The default implementation executes the query and returns a cursor over the result set, 
+	 * engines that can compute solutions one at a time should override it.
+	 * 
+	 * @param query
+	 * @return A cursor over the result set.
+	 */
+	public QueryCursor executeStreaming(Query query)
+		throws QueryEngineException
+	{
+		return new QueryCursorImpl(execute(query));
+	}
+	
+	/**
+	 * Execute a sparql-dl query asynchronously on an executor.
+	 * Cancelling the returned future stops the evaluation.
+	 * The default implementation executes the query in a task of the executor, 
+	 * cancelling the future only stops it if the task has not been started yet. 
+	 * Engines that can stop an evaluation should override it.
+	 * 
+	 * @param query
+	 * @param executor The executor the query is executed on.
+	 * @return A future of the query result set, completed exceptionally with a QueryEngineException if the query fails.
+	 */
+	public CompletableFuture<QueryResult> executeAsync(final Query query, Executor executor)
+	{
+		final CompletableFuture<QueryResult> future = new CompletableFuture<QueryResult>();
+		executor.execute(() -> {
+			if(future.isDone()) {
+				// cancelled before it has been started
+				return;
+			}
+			try {
+				future.complete(execute(query));
+			}
+			catch(Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Execute a sparql-dl query asynchronously on an executor and pass every solution to a callback as soon as it is computed.
+	 * Cancelling the returned future stops the evaluation, no solutions are passed to the callback afterwards.
+	 * The default implementation pulls the solutions from {@link #iterate(Query)} in a task of the executor 
+	 * and stops pulling them once the future has been cancelled. 
+	 * Cancelling the future waits for a callback that is running.
+	 * 
+	 * @param query
+	 * @param executor The executor the query is executed on.
+	 * @param callback Called with every solution, in the thread that executes the query.
+	 * @return A future that completes when all solutions have been passed to the callback, with whether the query has a solution.
+	 */
+	public CompletableFuture<Boolean> executeAsync(final Query query, Executor executor, final Consumer<QueryBinding> callback)
+	{
+		final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>() {
+			@Override
+			public synchronized boolean cancel(boolean mayInterruptIfRunning)
+			{
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+		executor.execute(() -> {
+			if(future.isDone()) {
+				// cancelled before it has been started
+				return;
+			}
+			try {
+				if(query.isAsk()) {
+					// the result of an ASK query has no bindings
+					future.complete(execute(query).ask());
+					return;
+				}
+				QueryBindingIterator it = iterate(query);
+				try {
+					boolean ask = false;
+					while(!future.isCancelled() && it.hasNext()) {
+						ask = true;
+						QueryBinding binding = it.next();
+						synchronized(future) {
+							if(future.isCancelled()) {
+								break;
+							}
+							callback.accept(binding);
+						}
+					}
+					future.complete(ask);
+				}
+				finally {
+					it.close();
+				}
+			}
+			catch(Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
 }
@@ -5,6 +5,8 @@
 package de.derivo.sparqldlapi;
 
 import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.jdom.Document;
 
@@ -31,6 +33,17 @@ public interface QueryResult extends Iterable<QueryBinding>
 	 */
 	public Iterator<QueryBinding> iterator();
 	
+	/**
+	 * A sequential stream over the result set.
+	 * The default implementation streams the bindings of the iterator.
+	 * 
+	 * @return
+	 */
+	public default Stream<QueryBinding> stream()
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
 	/**
 	 * Returns the QueryBinding at the specified position of the result.
 	 *  
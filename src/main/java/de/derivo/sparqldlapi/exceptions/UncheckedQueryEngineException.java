@@ -0,0 +1,21 @@
+package de.derivo.sparqldlapi.exceptions;
+
+/**
+ * Wraps a QueryEngineException that occurs while the solutions of a query are consumed
+ * through an interface that cannot throw checked exceptions (e.g. Iterator or Stream).
+ */
+public class UncheckedQueryEngineException extends RuntimeException 
+{
+	private static final long serialVersionUID = 1L;
+	
+	public UncheckedQueryEngineException(QueryEngineException cause)
+	{
+		super(cause.getMessage(), cause);
+	}
+	
+	@Override
+	public QueryEngineException getCause()
+	{
+		return (QueryEngineException) super.getCause();
+	}
+}
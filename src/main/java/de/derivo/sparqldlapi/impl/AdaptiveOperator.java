@@ -0,0 +1,135 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Evaluates the atoms of a component without a fixed order.  For every solution of the atoms evaluated
+ * so far the next atom is chosen from the remaining atoms by the cost model, with the values actually
+ * bound by the solution, so the order can differ between solutions.  Atoms that share a bound variable
+ * with the solution are preferred over atoms that would start a cartesian product.  The remaining atoms
+ * and the solutions of the chosen atom are kept on an explicit stack.
+ */
+class AdaptiveOperator implements QueryOperator {
+
+    private final QueryEngineImpl engine;
+
+    private final QueryOperator input;
+
+    private final AtomTemplate[] atoms;
+
+    private final CostModel costModel;
+
+    private final Cancellation cancellation;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    /**
+     * @param atoms The atoms of the component.  If the estimates of two atoms are equal the first one is chosen.
+     */
+    AdaptiveOperator(QueryEngineImpl engine, QueryOperator input, List<AtomTemplate> atoms, CostModel costModel,
+                     Cancellation cancellation) {
+        this.engine = engine;
+        this.input = input;
+        this.atoms = atoms.toArray(new AtomTemplate[atoms.size()]);
+        this.costModel = costModel;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        frames.clear();
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            QueryBindingImpl binding;
+            BitSet remaining;
+            if (frames.isEmpty()) {
+                binding = input.next();
+                if (binding == null) {
+                    return null;
+                }
+                remaining = new BitSet(atoms.length);
+                remaining.set(0, atoms.length);
+            }
+            else {
+                Frame top = frames.peek();
+                binding = top.solutions.next();
+                if (binding == null) {
+                    top.solutions.close();
+                    frames.pop();
+                    continue;
+                }
+                remaining = top.remaining;
+            }
+            if (remaining.isEmpty()) {
+                return binding;
+            }
+            int next = choose(binding, remaining);
+            BitSet rest = (BitSet) remaining.clone();
+            rest.clear(next);
+            QueryOperator solutions = new AtomOperator(engine, new SingletonOperator(binding), atoms[next],
+                                                        cancellation);
+            solutions.open();
+            frames.push(new Frame(solutions, rest));
+        }
+    }
+
+    private int choose(QueryBindingImpl binding, BitSet remaining) {
+        int best = -1;
+        boolean bestConnected = false;
+        double bestEstimate = Double.MAX_VALUE;
+        for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+            boolean connected = isConnected(atoms[i], binding);
+            double estimate = costModel.estimate(atoms[i], binding);
+            if (best < 0
+                    || (connected && !bestConnected)
+                    || (connected == bestConnected && estimate < bestEstimate)) {
+                best = i;
+                bestConnected = connected;
+                bestEstimate = estimate;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isConnected(AtomTemplate atom, QueryBindingImpl binding) {
+        boolean hasFreeVar = false;
+        for (int i = 0; i < atom.size(); i++) {
+            if (atom.isVar(i)) {
+                if (!atom.get(i, binding).isVar()) {
+                    return true;
+                }
+                hasFreeVar = true;
+            }
+        }
+        return !hasFreeVar;
+    }
+
+    @Override
+    public void close() {
+        while (!frames.isEmpty()) {
+            frames.pop().solutions.close();
+        }
+        input.close();
+    }
+
+    private static final class Frame {
+
+        private final QueryOperator solutions;
+
+        private final BitSet remaining;
+
+        Frame(QueryOperator solutions, BitSet remaining) {
+            this.solutions = solutions;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLLiteral;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index over the lexical forms of the literal values of annotation assertions.  Every literal
+ * gets a dense id, and the literals are posted by term, by annotation property, by language and by subject.
+ * Terms are the case-folded runs of letters and digits of a lexical form, so a search for all terms of a
+ * query is an intersection of postings.
+ * <p>
+ * There are as many terms and subjects as there are literals, and most of them are posted for a handful of
+ * literals only, so their postings are sorted arrays of ids, which take space proportional to the number of
+ * postings.  The few annotation properties and languages each post a large share of the literals, so their
+ * postings are bit sets, which are only probed.
+ */
+class AnnotationTextIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<IRI> subjects = new ArrayList<>();
+
+    private final List<IRI> properties = new ArrayList<>();
+
+    private final Map<String, int[]> terms = new HashMap<>();
+
+    private final Map<IRI, BitSet> byProperty = new HashMap<>();
+
+    private final Map<String, BitSet> byLanguage = new HashMap<>();
+
+    private final Map<IRI, int[]> bySubject = new HashMap<>();
+
+    /**
+     * @param assertions The annotation assertions with IRI subjects.  Assertions with other than literal
+     *                   values are ignored.
+     */
+    AnnotationTextIndex(Collection<OWLAnnotationAssertionAxiom> assertions) {
+        Map<String, PostingList> terms = new HashMap<>();
+        Map<IRI, PostingList> bySubject = new HashMap<>();
+        for (OWLAnnotationAssertionAxiom ax : assertions) {
+            if (!(ax.getValue() instanceof OWLLiteral) || !(ax.getSubject() instanceof IRI)) {
+                continue;
+            }
+            OWLLiteral literal = (OWLLiteral) ax.getValue();
+            int id = subjects.size();
+            subjects.add((IRI) ax.getSubject());
+            properties.add(ax.getProperty().getIRI());
+            // the terms are distinct and the ids increase, so every posting list stays sorted
+            for (String term : tokenize(literal.getLiteral())) {
+                terms.computeIfAbsent(term, k -> new PostingList()).add(id);
+            }
+            bySubject.computeIfAbsent((IRI) ax.getSubject(), k -> new PostingList()).add(id);
+            byProperty.computeIfAbsent(ax.getProperty().getIRI(), k -> new BitSet()).set(id);
+            byLanguage.computeIfAbsent(literal.getLang().toLowerCase(Locale.ROOT), k -> new BitSet()).set(id);
+        }
+        terms.forEach((term, postings) -> this.terms.put(term, postings.toArray()));
+        bySubject.forEach((subject, postings) -> this.bySubject.put(subject, postings.toArray()));
+    }
+
+    /**
+     * Split a text into its distinct terms, i.e. the runs of letters and digits, in lower case.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (Character.isLetterOrDigit(cp)) {
+                sb.appendCodePoint(cp);
+            }
+            else if (sb.length() > 0) {
+                tokens.add(sb.toString().toLowerCase(Locale.ROOT));
+                sb.setLength(0);
+            }
+            i += Character.charCount(cp);
+        }
+        if (sb.length() > 0) {
+            tokens.add(sb.toString().toLowerCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+
+    /**
+     * Find the literals whose lexical forms contain all terms of a query.
+     *
+     * @param query    The query text.  A query without terms matches no literal.
+     * @param language The language the literals must have, any language if empty.
+     * @param property The property of the assertions, any property if null.
+     * @param subject  The subject of the assertions, any subject if null.
+     * @return The ids of the matching literals in ascending order.
+     */
+    int[] search(String query, String language, @Nullable IRI property, @Nullable IRI subject) {
+        List<int[]> postings = new ArrayList<>();
+        for (String term : tokenize(query)) {
+            postings.add(terms.getOrDefault(term, EMPTY));
+        }
+        if (postings.isEmpty()) {
+            return EMPTY;
+        }
+        if (subject != null) {
+            postings.add(bySubject.getOrDefault(subject, EMPTY));
+        }
+        BitSet languagePostings = null;
+        if (!language.isEmpty()) {
+            languagePostings = byLanguage.getOrDefault(language.toLowerCase(Locale.ROOT), new BitSet());
+        }
+        BitSet propertyPostings = null;
+        if (property != null) {
+            propertyPostings = byProperty.getOrDefault(property, new BitSet());
+        }
+        // probe the other postings for every id of the shortest one
+        postings.sort(Comparator.comparingInt(p -> p.length));
+        int[] candidates = postings.get(0);
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int id : candidates) {
+            if (contains(postings, id)
+                    && (languagePostings == null || languagePostings.get(id))
+                    && (propertyPostings == null || propertyPostings.get(id))) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static boolean contains(List<int[]> postings, int id) {
+        for (int i = 1; i < postings.size(); i++) {
+            if (Arrays.binarySearch(postings.get(i), id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    IRI getSubject(int id) {
+        return subjects.get(id);
+    }
+
+    IRI getProperty(int id) {
+        return properties.get(id);
+    }
+
+    /**
+     * A growing list of ids, used while the index is built.
+     */
+    private static final class PostingList {
+
+        private int[] ids = new int[2];
+
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Extends every solution of its input with the solutions of a single query atom.
+ * An atom is evaluated by binding one (or more) of its variables at a time until it
+ * contains no variables anymore and can be checked against the ontology.  The candidate
+ * iterators of the individual steps are kept on an explicit stack, so the evaluation of
+ * a query does not consume the Java call stack.  The atom is a template whose arguments
+ * are resolved against the current binding, so no bound copy of the atom is created per
+ * candidate.
+ */
+class AtomOperator implements QueryOperator {
+
+    private final QueryEngineImpl engine;
+
+    private final QueryOperator input;
+
+    private final AtomTemplate atom;
+
+    private final Cancellation cancellation;
+
+    private final Deque<Iterator<QueryBindingImpl>> candidates = new ArrayDeque<>();
+
+    AtomOperator(QueryEngineImpl engine, QueryOperator input, AtomTemplate atom, Cancellation cancellation) {
+        this.engine = engine;
+        this.input = input;
+        this.atom = atom;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        candidates.clear();
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            cancellation.check();
+            QueryBindingImpl binding;
+            if (candidates.isEmpty()) {
+                binding = input.next();
+                if (binding == null) {
+                    return null;
+                }
+            }
+            else {
+                Iterator<QueryBindingImpl> top = candidates.peek();
+                if (!top.hasNext()) {
+                    candidates.pop();
+                    continue;
+                }
+                binding = top.next();
+            }
+            if (!engine.isWellFormed(atom, binding)) {
+                continue;
+            }
+            if (atom.isBound(binding)) {
+                // If the binding is entailed by the ontology then the atom is satisfied
+                if (engine.checkBound(atom, binding)) {
+                    return binding;
+                }
+            }
+            else {
+                candidates.push(engine.evalAtom(atom, binding));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        candidates.clear();
+        input.close();
+    }
+}
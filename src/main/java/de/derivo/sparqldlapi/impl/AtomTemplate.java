@@ -0,0 +1,129 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.QueryAtom;
+import de.derivo.sparqldlapi.types.QueryAtomType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable, compiled form of a query atom.  The variables of the atom are resolved
+ * to their slots in the bindings of the query once, when the plan is built.  During the
+ * evaluation the arguments are looked up in the current binding, so the atom does not
+ * have to be copied and bound for every candidate.
+ */
+class AtomTemplate {
+
+    private final QueryAtom atom;
+
+    private final QueryAtomType type;
+
+    private final QueryArgument[] args;
+
+    private final int[] slots;
+
+    AtomTemplate(QueryAtom atom, VarTable table) {
+        this.atom = atom;
+        this.type = atom.getType();
+        List<QueryArgument> arguments = atom.getArguments();
+        this.args = arguments.toArray(new QueryArgument[arguments.size()]);
+        this.slots = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            slots[i] = args[i].isVar() ? table.slot(args[i]) : -1;
+        }
+    }
+
+    QueryAtom getAtom() {
+        return atom;
+    }
+
+    QueryAtomType getType() {
+        return type;
+    }
+
+    int size() {
+        return args.length;
+    }
+
+    /**
+     * Check whether an argument of the atom is a variable.
+     */
+    boolean isVar(int i) {
+        return args[i].isVar();
+    }
+
+    /**
+     * Get an argument of the atom, bound with the given binding.
+     *
+     * @return The value of the argument in the binding or the argument itself if it is a
+     * constant or an unbound variable.
+     */
+    QueryArgument get(int i, QueryBindingImpl binding) {
+        QueryArgument arg = args[i];
+        if (!arg.isVar()) {
+            return arg;
+        }
+        // variables that have not been registered with the query are looked up by name
+        QueryArgument value = slots[i] >= 0 ? binding.get(slots[i]) : binding.get(arg);
+        return value != null ? value : arg;
+    }
+
+    /**
+     * Check whether all variables of the atom are bound by the given binding.
+     */
+    boolean isBound(QueryBindingImpl binding) {
+        for (int i = 0; i < args.length; i++) {
+            if (get(i, binding).isVar()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the arguments of the atom, bound with the given binding.  Bindings with equal keys
+     * have the same solutions for this atom.
+     */
+    List<QueryArgument> key(QueryBindingImpl binding) {
+        QueryArgument[] key = new QueryArgument[args.length];
+        for (int i = 0; i < args.length; i++) {
+            key[i] = get(i, binding);
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Get the values of the variables of the atom in the given solution.
+     */
+    QueryArgument[] values(QueryBindingImpl solution) {
+        QueryArgument[] values = new QueryArgument[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].isVar()) {
+                values[i] = get(i, solution);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Bind the variables of the atom to the given values, as returned by {@link #values}.
+     */
+    void apply(QueryBindingImpl binding, QueryArgument[] values) {
+        for (int i = 0; i < args.length; i++) {
+            if (values[i] != null) {
+                if (slots[i] >= 0) {
+                    binding.set(slots[i], values[i]);
+                }
+                else {
+                    binding.set(args[i], values[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return atom.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extends the solutions of its input with the solutions of a single query atom, a block of
+ * input solutions at a time.  Input solutions that bind the arguments of the atom to the
+ * same values have the same solutions for the atom, so the atom is only evaluated once for
+ * every distinct combination of arguments within a block, and the result is applied to all
+ * solutions of the block that share it.  The distinct combinations of a block are first
+ * passed to the engine together, which answers the atoms it can with lookups that serve the
+ * whole block (see {@link QueryEngineImpl#evalBlock}), e.g. the values of a property for every
+ * bound subject.  The remaining combinations are evaluated one at a time.  The solutions are
+ * returned in the same order as by the {@link AtomOperator}.
+ */
+class BatchAtomOperator implements QueryOperator {
+
+    private final QueryEngineImpl engine;
+
+    private final QueryOperator input;
+
+    private final AtomTemplate atom;
+
+    private final int batchSize;
+
+    private final Cancellation cancellation;
+
+    private final List<QueryBindingImpl> batch = new ArrayList<>();
+
+    private final Map<List<QueryArgument>, List<QueryArgument[]>> solutions = new HashMap<>();
+
+    private int batchPos;
+
+    private QueryBindingImpl binding;
+
+    private List<QueryArgument[]> bindingSolutions;
+
+    private int solutionPos;
+
+    private boolean exhausted;
+
+    BatchAtomOperator(QueryEngineImpl engine, QueryOperator input, AtomTemplate atom, int batchSize,
+                      Cancellation cancellation) {
+        this.engine = engine;
+        this.input = input;
+        this.atom = atom;
+        this.batchSize = batchSize;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        batch.clear();
+        solutions.clear();
+        batchPos = 0;
+        binding = null;
+        exhausted = false;
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            cancellation.check();
+            if (binding != null && solutionPos < bindingSolutions.size()) {
+                QueryBindingImpl solution = binding.clone();
+                atom.apply(solution, bindingSolutions.get(solutionPos++));
+                return solution;
+            }
+            if (batchPos == batch.size() && !fillBatch()) {
+                return null;
+            }
+            binding = batch.get(batchPos++);
+            List<QueryArgument> key = atom.key(binding);
+            bindingSolutions = solutions.get(key);
+            if (bindingSolutions == null) {
+                bindingSolutions = solve(binding);
+                solutions.put(key, bindingSolutions);
+            }
+            solutionPos = 0;
+        }
+    }
+
+    private boolean fillBatch() throws QueryEngineException {
+        batch.clear();
+        solutions.clear();
+        batchPos = 0;
+        while (!exhausted && batch.size() < batchSize) {
+            QueryBindingImpl b = input.next();
+            if (b == null) {
+                exhausted = true;
+            }
+            else {
+                batch.add(b);
+            }
+        }
+        Map<List<QueryArgument>, QueryBindingImpl> keys = new LinkedHashMap<>();
+        for (QueryBindingImpl b : batch) {
+            keys.putIfAbsent(atom.key(b), b);
+        }
+        engine.evalBlock(atom, keys, solutions);
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Evaluates the atom for a single binding.
+     *
+     * @return The values of the variables of the atom for every solution.
+     */
+    private List<QueryArgument[]> solve(QueryBindingImpl binding) throws QueryEngineException {
+        List<QueryArgument[]> result = new ArrayList<>();
+        QueryOperator solver = new AtomOperator(engine, new SingletonOperator(binding), atom, cancellation);
+        solver.open();
+        try {
+            QueryBindingImpl solution;
+            while ((solution = solver.next()) != null) {
+                result.add(atom.values(solution));
+            }
+        } finally {
+            solver.close();
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        batch.clear();
+        solutions.clear();
+        binding = null;
+        input.close();
+    }
+}
@@ -0,0 +1,531 @@
+package de.derivo.sparqldlapi.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.util.Version;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An OWLReasoner that memoizes the hierarchy, instance and property value lookups of another reasoner.
+ * All other calls are passed through.  The memoized results are dropped whenever the root ontology or
+ * one of its imports changes and when the reasoner is flushed.  While a buffering reasoner has pending
+ * changes, lookups are passed through, so results computed before a flush of the underlying reasoner are
+ * never served afterwards.
+ * <p>
+ * The size and eviction of the cache are configured with a Guava cache specification, e.g.
+ * {@code "maximumSize=10000,expireAfterAccess=10m"}.
+ * <p>
+ * The reasoner can be used by many threads at once.  Memoized results are served without locking.  The calls
+ * that are passed to the underlying reasoner are locked per result: a call takes the stripe of a striped
+ * lock that its method and arguments hash to, so concurrent lookups of the same missing result wait for a
+ * single call, while lookups of different results proceed in parallel.  Calls that change the state of the
+ * underlying reasoner (flushing, precomputing inferences and disposing) wait until no other call is running
+ * and hold up the calls that are started meanwhile.  The underlying reasoner must therefore answer queries for
+ * different results concurrently.  A reasoner that cannot is wrapped with a concurrency of 1, which
+ * serializes all calls to it.
+ */
+public class CachingReasoner implements OWLReasoner, OWLOntologyChangeListener {
+
+    /**
+     * The cache specification that is used if none is given.
+     */
+    public static final String DEFAULT_CACHE_SPEC = "maximumSize=10000";
+
+    /**
+     * The number of stripes of the lock that is used if none is given.
+     */
+    public static final int DEFAULT_CONCURRENCY = 64;
+
+    private final OWLReasoner delegate;
+
+    private final Cache<List<Object>, Object> cache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong schemaVersion = new AtomicLong();
+
+    /**
+     * Guards the calls to the underlying reasoner per result.
+     */
+    private final Striped<Lock> locks;
+
+    /**
+     * Shared by the calls that query the underlying reasoner, held exclusively by the calls that change its state.
+     */
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the ontology has changed but the changes may not have been applied by the reasoner yet.
+     */
+    private volatile boolean pending;
+
+    public CachingReasoner(OWLReasoner delegate) {
+        this(delegate, DEFAULT_CACHE_SPEC);
+    }
+
+    /**
+     * @param delegate  The reasoner whose results are memoized.
+     * @param cacheSpec The size and eviction of the cache as Guava cache specification.
+     */
+    public CachingReasoner(OWLReasoner delegate, String cacheSpec) {
+        this(delegate, cacheSpec, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param delegate    The reasoner whose results are memoized.
+     * @param cacheSpec   The size and eviction of the cache as Guava cache specification.
+     * @param concurrency The number of stripes of the lock that guards the calls to the underlying reasoner,
+     *                    1 if the reasoner can only answer one call at a time.
+     */
+    public CachingReasoner(OWLReasoner delegate, String cacheSpec, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be positive: " + concurrency);
+        }
+        this.delegate = delegate;
+        this.locks = Striped.lock(concurrency);
+        this.cache = CacheBuilder.from(CacheBuilderSpec.parse(cacheSpec)).recordStats().build();
+        delegate.getRootOntology().getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * Get the reasoner whose results are memoized.
+     */
+    public OWLReasoner getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the number of lookups that have been answered from the cache.
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Get the number of lookups that have been passed to the underlying reasoner.
+     */
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Drops all memoized results.
+     */
+    public void invalidate() {
+        schemaVersion.incrementAndGet();
+        dropResults();
+    }
+
+    private void dropResults() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the version of the results of the underlying reasoner.  The version changes whenever the memoized
+     * results are dropped, so results derived from the reasoner can be memoized along with it.
+     *
+     * @return The version or -1 if the reasoner has pending changes and its results must not be memoized.
+     */
+    long version() {
+        return isPending() ? -1 : version.get();
+    }
+
+    /**
+     * Get the version of the schema the results of the underlying reasoner are computed from.  Unlike
+     * {@link #version()} the schema version is kept when only assertions about individuals or annotations
+     * change, so results that only depend on the class and property hierarchies, like a snapshot of the
+     * class hierarchy, survive changes of the ABox.  Without nominals in the schema, assertions about
+     * individuals can only change these hierarchies by making the ontology inconsistent.
+     *
+     * @return The version or -1 if the reasoner has pending changes and its results must not be memoized.
+     */
+    long schemaVersion() {
+        return isPending() ? -1 : schemaVersion.get();
+    }
+
+    private boolean isPending() {
+        if (pending && getPendingChanges().isEmpty()) {
+            // the underlying reasoner has been flushed directly
+            pending = false;
+            dropResults();
+        }
+        return pending;
+    }
+
+    /**
+     * Stops listening to the changes of the ontology without disposing the underlying reasoner.
+     * The memoized results are not dropped on changes anymore, so the cache should not be used afterwards.
+     */
+    public void detach() {
+        delegate.getRootOntology().getOWLOntologyManager().removeOntologyChangeListener(this);
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> importsClosure = delegate.getRootOntology().getImportsClosure();
+        boolean changed = false;
+        for (OWLOntologyChange change : changes) {
+            if (importsClosure.contains(change.getOntology())) {
+                changed = true;
+                if (isSchemaChange(change)) {
+                    schemaVersion.incrementAndGet();
+                    break;
+                }
+            }
+        }
+        if (changed) {
+            if (delegate.getBufferingMode() == BufferingMode.BUFFERING) {
+                pending = true;
+            }
+            dropResults();
+        }
+    }
+
+    /**
+     * Test whether a change may change the class or property hierarchies: any change of the imports and
+     * any change of an axiom that is neither an assertion about individuals nor an annotation.
+     */
+    private static boolean isSchemaChange(OWLOntologyChange change) {
+        if (!change.isAxiomChange()) {
+            return change.isImportChange();
+        }
+        OWLAxiom ax = change.getAxiom();
+        return !AxiomType.ABoxAxiomTypes.contains(ax.getAxiomType()) && !ax.isAnnotationAxiom();
+    }
+
+    /**
+     * Call the underlying reasoner under the lock of a result.
+     *
+     * @param key The method and the arguments of the call, which identify the result.
+     */
+    private <T> T locked(Supplier<T> call, Object... key) {
+        Lock lock = locks.get(Arrays.asList(key));
+        stateLock.readLock().lock();
+        try {
+            lock.lock();
+            try {
+                return call.get();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Call the underlying reasoner while no other call is running, for calls that change its state.
+     */
+    private void exclusive(Runnable call) {
+        stateLock.writeLock().lock();
+        try {
+            call.run();
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Call the underlying reasoner without memoizing the result, e.g. to take a snapshot whose lookups are
+     * never repeated.  The call is locked like any other call to the underlying reasoner.
+     *
+     * @param key The method and the arguments of the call, which identify the result.
+     */
+    <T> T callDelegate(Function<OWLReasoner, T> call, Object... key) {
+        return locked(() -> call.apply(delegate), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(Supplier<T> computation, Object... key) {
+        if (isPending()) {
+            return locked(computation, key);
+        }
+        try {
+            return (T) cache.get(Arrays.asList(key), () -> locked(computation, key));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // the reasoner only throws unchecked exceptions, rethrow them unwrapped
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        return lookup(() -> delegate.getSubClasses(ce, direct), "getSubClasses", ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        return lookup(() -> delegate.getSuperClasses(ce, direct), "getSuperClasses", ce, direct);
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        return lookup(() -> delegate.getEquivalentClasses(ce), "getEquivalentClasses", ce);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        return lookup(() -> delegate.getDisjointClasses(ce), "getDisjointClasses", ce);
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe,
+                                                                       boolean direct) {
+        return lookup(() -> delegate.getSubObjectProperties(pe, direct), "getSubObjectProperties", pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe,
+                                                                         boolean direct) {
+        return lookup(() -> delegate.getSuperObjectProperties(pe, direct), "getSuperObjectProperties", pe, direct);
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        return lookup(() -> delegate.getEquivalentObjectProperties(pe), "getEquivalentObjectProperties", pe);
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        return lookup(() -> delegate.getSubDataProperties(pe, direct), "getSubDataProperties", pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        return lookup(() -> delegate.getSuperDataProperties(pe, direct), "getSuperDataProperties", pe, direct);
+    }
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        return lookup(() -> delegate.getEquivalentDataProperties(pe), "getEquivalentDataProperties", pe);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return lookup(() -> delegate.getTypes(ind, direct), "getTypes", ind, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        return lookup(() -> delegate.getInstances(ce, direct), "getInstances", ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind,
+                                                               OWLObjectPropertyExpression pe) {
+        return lookup(() -> delegate.getObjectPropertyValues(ind, pe), "getObjectPropertyValues", ind, pe);
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return lookup(() -> delegate.getDataPropertyValues(ind, pe), "getDataPropertyValues", ind, pe);
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return lookup(() -> delegate.getSameIndividuals(ind), "getSameIndividuals", ind);
+    }
+
+    @Override
+    public void flush() {
+        exclusive(() -> {
+            delegate.flush();
+            pending = false;
+            dropResults();
+        });
+    }
+
+    @Override
+    public void dispose() {
+        detach();
+        invalidate();
+        exclusive(delegate::dispose);
+    }
+
+    @Override
+    public String getReasonerName() {
+        return delegate.getReasonerName();
+    }
+
+    @Override
+    public Version getReasonerVersion() {
+        return delegate.getReasonerVersion();
+    }
+
+    @Override
+    public BufferingMode getBufferingMode() {
+        return delegate.getBufferingMode();
+    }
+
+    @Override
+    public List<OWLOntologyChange> getPendingChanges() {
+        return locked(() -> delegate.getPendingChanges(), "getPendingChanges");
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomAdditions() {
+        return locked(() -> delegate.getPendingAxiomAdditions(), "getPendingAxiomAdditions");
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomRemovals() {
+        return locked(() -> delegate.getPendingAxiomRemovals(), "getPendingAxiomRemovals");
+    }
+
+    @Override
+    public OWLOntology getRootOntology() {
+        return delegate.getRootOntology();
+    }
+
+    @Override
+    public void interrupt() {
+        delegate.interrupt();
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        exclusive(() -> delegate.precomputeInferences(inferenceTypes));
+    }
+
+    @Override
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return locked(() -> delegate.isPrecomputed(inferenceType), "isPrecomputed", inferenceType);
+    }
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        return delegate.getPrecomputableInferenceTypes();
+    }
+
+    @Override
+    public boolean isConsistent() {
+        return locked(() -> delegate.isConsistent(), "isConsistent");
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression classExpression) {
+        return locked(() -> delegate.isSatisfiable(classExpression), "isSatisfiable", classExpression);
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        return locked(() -> delegate.getUnsatisfiableClasses(), "getUnsatisfiableClasses");
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        return locked(() -> delegate.isEntailed(axiom), "isEntailed", axiom);
+    }
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        return locked(() -> delegate.isEntailed(axioms), "isEntailed", axioms);
+    }
+
+    @Override
+    public boolean isEntailmentCheckingSupported(AxiomType<?> axiomType) {
+        return delegate.isEntailmentCheckingSupported(axiomType);
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        return locked(() -> delegate.getTopClassNode(), "getTopClassNode");
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        return locked(() -> delegate.getBottomClassNode(), "getBottomClassNode");
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        return locked(() -> delegate.getTopObjectPropertyNode(), "getTopObjectPropertyNode");
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        return locked(() -> delegate.getBottomObjectPropertyNode(), "getBottomObjectPropertyNode");
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        return locked(() -> delegate.getDisjointObjectProperties(pe), "getDisjointObjectProperties", pe);
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        return locked(() -> delegate.getInverseObjectProperties(pe), "getInverseObjectProperties", pe);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        return locked(() -> delegate.getObjectPropertyDomains(pe, direct), "getObjectPropertyDomains", pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        return locked(() -> delegate.getObjectPropertyRanges(pe, direct), "getObjectPropertyRanges", pe, direct);
+    }
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        return locked(() -> delegate.getTopDataPropertyNode(), "getTopDataPropertyNode");
+    }
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        return locked(() -> delegate.getBottomDataPropertyNode(), "getBottomDataPropertyNode");
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        return locked(() -> delegate.getDisjointDataProperties(pe), "getDisjointDataProperties", pe);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        return locked(() -> delegate.getDataPropertyDomains(pe, direct), "getDataPropertyDomains", pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        return locked(() -> delegate.getDifferentIndividuals(ind), "getDifferentIndividuals", ind);
+    }
+
+    @Override
+    public long getTimeOut() {
+        return delegate.getTimeOut();
+    }
+
+    @Override
+    public FreshEntityPolicy getFreshEntityPolicy() {
+        return delegate.getFreshEntityPolicy();
+    }
+
+    @Override
+    public IndividualNodeSetPolicy getIndividualNodeSetPolicy() {
+        return delegate.getIndividualNodeSetPolicy();
+    }
+}
@@ -0,0 +1,48 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+/**
+ * Stops an evaluation of a query, or a part of it, from any thread.  The operators of an evaluation share a
+ * token and check it for every candidate solution, so they stop without finishing the candidate loop they
+ * are in.  A child token is cancelled together with its parent, e.g. the components of a group are stopped
+ * when the query is cancelled, but cancelling a group does not stop the other groups.
+ */
+final class Cancellation {
+
+    private final Cancellation parent;
+
+    private volatile boolean cancelled;
+
+    Cancellation() {
+        this(null);
+    }
+
+    private Cancellation(Cancellation parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Create a token that is cancelled when this one is cancelled.
+     */
+    Cancellation child() {
+        return new Cancellation(this);
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled || parent != null && parent.isCancelled();
+    }
+
+    /**
+     * Stops the evaluation if the token has been cancelled.
+     */
+    void check() throws QueryEngineException {
+        if (isCancelled()) {
+            throw new QueryEngineException("The evaluation of the query has been cancelled.");
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the inferred class hierarchy of a reasoner.  Every class gets a dense id, the direct sub and
+ * super classes of a class are stored as arrays of ids and so are the (indirect) sub and super classes, as
+ * sorted arrays, so subsumption tests are binary searches and the enumeration of sub and super classes is a
+ * scan over an array.  The closures are computed on first use and take space proportional to their size,
+ * so even a query that touches the closures of all classes takes space proportional to the number of
+ * subsumptions rather than the square of the number of classes.
+ * <p>
+ * The snapshot is taken for a version of the schema (see {@link CachingReasoner#schemaVersion()}), so it
+ * survives changes of the ABox.  Such a change may still add classes to the signature, which
+ * {@link #covers(Set)} checks for.
+ * <p>
+ * Just like the answers of the reasoner, the sub classes of a class exclude its equivalent classes and include
+ * owl:Nothing, its super classes exclude the equivalent classes and include owl:Thing.  The equivalent classes
+ * are kept as the node of the reasoner every class belongs to.
+ */
+class ClassHierarchyIndex {
+
+    private final long version;
+
+    private final Map<OWLClass, Integer> ids = new HashMap<>();
+
+    private final OWLClass[] classes;
+
+    private final int[][] directSubClasses;
+
+    private final int[][] directSuperClasses;
+
+    /**
+     * The node of every class, as the id of one of the classes of the node.
+     */
+    private final int[] nodes;
+
+    private final int[][] descendants;
+
+    private final int[][] ancestors;
+
+    /**
+     * The signature the snapshot has last been found to cover.
+     */
+    private volatile Set<OWLClass> signature;
+
+    /**
+     * Take a snapshot of the hierarchy by asking the reasoner for the direct sub classes of every class.
+     *
+     * @param version The schema version of the reasoner results the snapshot is taken from.
+     * @param classes The classes of the signature.  Classes that only the reasoner knows are added.
+     */
+    ClassHierarchyIndex(CachingReasoner reasoner, long version, Set<OWLClass> classes) {
+        this.version = version;
+        this.signature = classes;
+        List<OWLClass> all = new ArrayList<>(classes.size());
+        for (OWLClass cls : classes) {
+            if (ids.putIfAbsent(cls, all.size()) == null) {
+                all.add(cls);
+            }
+        }
+        // every class but the ones of the top node is found in a node of the sub classes of another class
+        Map<OWLClass, OWLClass> representatives = new HashMap<>();
+        addNode(reasoner.callDelegate(OWLReasoner::getTopClassNode, "getTopClassNode"), all, representatives);
+        List<int[]> subs = new ArrayList<>(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            OWLClass cls = all.get(i);
+            List<Integer> direct = new ArrayList<>();
+            NodeSet<OWLClass> subClasses = reasoner.callDelegate(r -> r.getSubClasses(cls, true),
+                                                                 "getSubClasses", cls, true);
+            for (Node<OWLClass> node : subClasses.getNodes()) {
+                direct.addAll(addNode(node, all, representatives));
+            }
+            subs.add(direct.stream().mapToInt(Integer::intValue).toArray());
+        }
+        this.classes = all.toArray(new OWLClass[0]);
+        this.directSubClasses = subs.toArray(new int[0][]);
+        this.directSuperClasses = invert(directSubClasses);
+        this.nodes = new int[this.classes.length];
+        for (int i = 0; i < this.classes.length; i++) {
+            OWLClass representative = representatives.get(this.classes[i]);
+            nodes[i] = representative == null ? i : ids.get(representative);
+        }
+        this.descendants = new int[this.classes.length][];
+        this.ancestors = new int[this.classes.length][];
+    }
+
+    /**
+     * Give the classes of a node ids and record the node they belong to.
+     *
+     * @return The ids of the classes of the node.
+     */
+    private List<Integer> addNode(Node<OWLClass> node, List<OWLClass> all, Map<OWLClass, OWLClass> representatives) {
+        OWLClass representative = node.getRepresentativeElement();
+        List<Integer> result = new ArrayList<>();
+        for (OWLClass cls : node) {
+            representatives.put(cls, representative);
+            result.add(ids.computeIfAbsent(cls, c -> {
+                all.add(c);
+                return all.size() - 1;
+            }));
+        }
+        return result;
+    }
+
+    private static int[][] invert(int[][] edges) {
+        int[] counts = new int[edges.length];
+        for (int[] targets : edges) {
+            for (int target : targets) {
+                counts[target]++;
+            }
+        }
+        int[][] inverted = new int[edges.length][];
+        for (int i = 0; i < edges.length; i++) {
+            inverted[i] = new int[counts[i]];
+        }
+        Arrays.fill(counts, 0);
+        for (int source = 0; source < edges.length; source++) {
+            for (int target : edges[source]) {
+                inverted[target][counts[target]++] = source;
+            }
+        }
+        return inverted;
+    }
+
+    /**
+     * Get the schema version of the reasoner results the snapshot has been taken from.
+     */
+    long getVersion() {
+        return version;
+    }
+
+    boolean contains(OWLClass cls) {
+        return ids.containsKey(cls);
+    }
+
+    /**
+     * Test whether the snapshot contains all classes of a signature.  Only a signature that differs from
+     * the one last checked is compared class by class.
+     */
+    boolean covers(Set<OWLClass> classes) {
+        if (classes == signature) {
+            return true;
+        }
+        if (!ids.keySet().containsAll(classes)) {
+            return false;
+        }
+        signature = classes;
+        return true;
+    }
+
+    /**
+     * Test whether a class is a (direct) sub class of another class, excluding equivalent classes.
+     * Both classes must be contained in the index.
+     */
+    boolean isSubClassOf(OWLClass subCls, OWLClass superCls, boolean direct) {
+        int sub = ids.get(subCls);
+        int sup = ids.get(superCls);
+        if (direct) {
+            for (int s : directSuperClasses[sub]) {
+                if (s == sup) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return Arrays.binarySearch(descendants(sup), sub) >= 0;
+    }
+
+    /**
+     * Test whether two classes are equivalent, which includes a class and itself.  Both classes must be
+     * contained in the index.
+     */
+    boolean isEquivalent(OWLClass cls1, OWLClass cls2) {
+        return nodes[ids.get(cls1)] == nodes[ids.get(cls2)];
+    }
+
+    /**
+     * Get the (direct) sub classes of a class contained in the index.
+     */
+    Iterator<OWLClass> getSubClasses(OWLClass cls, boolean direct) {
+        int id = ids.get(cls);
+        return direct ? iterator(directSubClasses[id]) : iterator(descendants(id));
+    }
+
+    /**
+     * Get the (direct) super classes of a class contained in the index.
+     */
+    Iterator<OWLClass> getSuperClasses(OWLClass cls, boolean direct) {
+        int id = ids.get(cls);
+        return direct ? iterator(directSuperClasses[id]) : iterator(ancestors(id));
+    }
+
+    private synchronized int[] descendants(int id) {
+        if (descendants[id] == null) {
+            descendants[id] = closure(id, directSubClasses);
+        }
+        return descendants[id];
+    }
+
+    private synchronized int[] ancestors(int id) {
+        if (ancestors[id] == null) {
+            ancestors[id] = closure(id, directSuperClasses);
+        }
+        return ancestors[id];
+    }
+
+    private static int[] closure(int id, int[][] edges) {
+        // a hash set rather than a bit set, which would take space proportional to the number of classes
+        Set<Integer> closure = new HashSet<>();
+        int[] todo = new int[16];
+        int size = 0;
+        for (int next : edges[id]) {
+            todo = push(todo, size++, next);
+        }
+        while (size > 0) {
+            int c = todo[--size];
+            if (closure.add(c)) {
+                for (int next : edges[c]) {
+                    todo = push(todo, size++, next);
+                }
+            }
+        }
+        int[] sorted = closure.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static int[] push(int[] stack, int size, int value) {
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+        }
+        stack[size] = value;
+        return stack;
+    }
+
+    private Iterator<OWLClass> iterator(int[] ids) {
+        return Arrays.stream(ids).mapToObj(id -> classes[id]).iterator();
+    }
+}
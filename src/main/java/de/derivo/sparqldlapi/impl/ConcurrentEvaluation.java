@@ -0,0 +1,94 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Evaluates independent operators (the groups of a query or the components of a group) concurrently on an
+ * executor.  An evaluation pulls all solutions of its operator in a task of the executor.  A task never waits
+ * for other tasks of the executor: a group is composed from the evaluations of its components instead of
+ * being evaluated by a task of its own, so a bounded executor cannot run out of threads while tasks are queued.
+ */
+final class ConcurrentEvaluation {
+
+    private ConcurrentEvaluation() {
+    }
+
+    /**
+     * Start pulling all solutions of an operator on an executor.  The solutions of a group of components
+     * are combined as soon as the evaluations of its components have completed, see
+     * {@link ParallelProductOperator#evaluate()}.
+     *
+     * @param cancellation Stops the evaluation once it is cancelled, the operators check it for every
+     *                     candidate solution.  The solutions pulled so far are returned, so an evaluator that
+     *                     does not cancel the evaluation itself has to check the token.
+     */
+    static CompletableFuture<List<QueryBindingImpl>> start(QueryOperator input,
+                                                           Executor executor,
+                                                           Cancellation cancellation) {
+        if (input instanceof ParallelProductOperator) {
+            return ((ParallelProductOperator) input).evaluate();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            List<QueryBindingImpl> solutions = new ArrayList<>();
+            if (cancellation.isCancelled()) {
+                return solutions;
+            }
+            try {
+                input.open();
+                try {
+                    QueryBindingImpl binding;
+                    while (!cancellation.isCancelled() && (binding = input.next()) != null) {
+                        solutions.add(binding);
+                    }
+                } finally {
+                    input.close();
+                }
+            } catch (QueryEngineException e) {
+                // the operators fail once the token has been cancelled
+                if (!cancellation.isCancelled()) {
+                    throw new CompletionException(e);
+                }
+            }
+            return solutions;
+        }, executor);
+    }
+
+    /**
+     * Wait for an evaluation to complete.  This is only called by the thread that executes the query, never
+     * by a task of the executor.  The wait ends early if the waiting thread is interrupted.
+     *
+     * @return The solutions of the evaluation.
+     * @throws QueryEngineException If the evaluation has failed with it or the waiting thread has been
+     *                              interrupted.
+     */
+    static <T> T join(CompletableFuture<T> evaluation) throws QueryEngineException {
+        try {
+            return evaluation.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof QueryEngineException) {
+                throw (QueryEngineException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (CancellationException e) {
+            throw new QueryEngineException("The evaluation has been cancelled.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryEngineException("The evaluation of the query has been interrupted.");
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.QueryAtom;
+import de.derivo.sparqldlapi.types.QueryAtomType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates the number of solutions of query atoms from the statistics of the ontology and orders the
+ * atoms of a query component accordingly.  The estimate of an atom depends on the variables that are
+ * already bound by the atoms evaluated before it: it is the expected number of solutions for a single
+ * solution of these atoms.
+ */
+class CostModel {
+
+    /**
+     * The cost of evaluating a bound atom (usually a reasoner call) relative to the cost of hashing a
+     * solution, used to decide between bind joins and hash joins.
+     */
+    static final double BIND_JOIN_PROBE_COST = 4.0;
+
+    private final OntologyStatistics statistics;
+
+    CostModel(OntologyStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Order the atoms of a connected component.  Starting with the atom with the fewest expected
+     * solutions, the next atom is always the cheapest of the atoms that share a variable with the
+     * atoms chosen so far, so no cartesian products are introduced.  Ties keep the order of the query.
+     */
+    List<QueryAtom> order(Collection<QueryAtom> atoms) {
+        List<QueryAtom> remaining = new LinkedList<>(atoms);
+        List<QueryAtom> ordered = new ArrayList<>(atoms.size());
+        Set<QueryArgument> bound = new HashSet<>();
+        while (!remaining.isEmpty()) {
+            QueryAtom best = null;
+            boolean bestConnected = false;
+            double bestEstimate = Double.MAX_VALUE;
+            for (QueryAtom atom : remaining) {
+                boolean connected = ordered.isEmpty() || isConnected(atom, bound);
+                double estimate = estimate(atom, bound);
+                if (best == null
+                        || (connected && !bestConnected)
+                        || (connected == bestConnected && estimate < bestEstimate)) {
+                    best = atom;
+                    bestConnected = connected;
+                    bestEstimate = estimate;
+                }
+            }
+            remaining.remove(best);
+            ordered.add(best);
+            bind(best, bound);
+        }
+        return ordered;
+    }
+
+    static void bind(QueryAtom atom, Set<QueryArgument> bound) {
+        for (QueryArgument arg : atom.getArguments()) {
+            if (arg.isVar()) {
+                bound.add(arg);
+            }
+        }
+    }
+
+    private static boolean isConnected(QueryAtom atom, Set<QueryArgument> bound) {
+        boolean hasVar = false;
+        for (QueryArgument arg : atom.getArguments()) {
+            if (arg.isVar()) {
+                if (bound.contains(arg)) {
+                    return true;
+                }
+                hasVar = true;
+            }
+        }
+        return !hasVar;
+    }
+
+    /**
+     * Estimate the number of solutions of an atom.
+     *
+     * @param bound The variables that are bound when the atom is evaluated.
+     * @return The expected number of solutions per solution of the atoms evaluated before.  Values below 1
+     * are the probability that a bound atom is satisfied.
+     */
+    double estimate(QueryAtom atom, Set<QueryArgument> bound) {
+        return estimate(atom.getType(), atom.getArguments(), bound);
+    }
+
+    /**
+     * Estimate the number of solutions of an atom for the values actually bound by a solution.
+     * Bound arguments are treated like constants, so e.g. the number of instances of the class bound
+     * to a variable is taken into account.
+     *
+     * @return The expected number of solutions that extend the given solution.
+     */
+    double estimate(AtomTemplate atom, QueryBindingImpl binding) {
+        return estimate(atom.getType(), atom.key(binding), Collections.emptySet());
+    }
+
+    private double estimate(QueryAtomType type, List<QueryArgument> args, Set<QueryArgument> bound) {
+        double individuals = Math.max(1, statistics.individuals());
+        double classes = Math.max(1, statistics.classes());
+        double properties = Math.max(1, statistics.objectProperties() + statistics.dataProperties());
+        double annotationProperties = Math.max(1, statistics.annotationProperties());
+
+        switch (type) {
+            case TYPE:
+            case DIRECT_TYPE: {
+                QueryArgument ind = args.get(0);
+                QueryArgument cls = args.get(1);
+                double n = cls.isURI() ? statistics.instances(cls.getValueAsIRI()) : statistics.classAssertions();
+                if (isFixed(ind, bound)) {
+                    n /= individuals;
+                }
+                if (cls.isVar() && bound.contains(cls)) {
+                    n /= classes;
+                }
+                return n;
+            }
+            case PROPERTY_VALUE: {
+                QueryArgument prop = args.get(1);
+                double n = prop.isURI() ? statistics.propertyAssertions(prop.getValueAsIRI())
+                        : statistics.propertyAssertions();
+                if (prop.isVar() && bound.contains(prop)) {
+                    n /= properties;
+                }
+                if (isFixed(args.get(0), bound)) {
+                    n /= individuals;
+                }
+                if (isFixed(args.get(2), bound)) {
+                    n /= individuals;
+                }
+                return n;
+            }
+            case ANNOTATION: {
+                QueryArgument prop = args.get(1);
+                double n = prop.isURI() ? statistics.annotationAssertions(prop.getValueAsIRI())
+                        : statistics.annotationAssertions();
+                if (prop.isVar() && bound.contains(prop)) {
+                    n /= annotationProperties;
+                }
+                if (isFixed(args.get(0), bound)) {
+                    n /= individuals + classes + properties;
+                }
+                if (isFixed(args.get(2), bound)) {
+                    // annotation values are mostly distinct
+                    n = Math.min(n, 1);
+                }
+                return n;
+            }
+            case TEXT_MATCH: {
+                QueryArgument prop = args.get(1);
+                double n = prop.isURI() ? statistics.annotationAssertions(prop.getValueAsIRI())
+                        : statistics.annotationAssertions();
+                if (isFixed(args.get(0), bound)) {
+                    n /= individuals + classes + properties;
+                }
+                // the terms of a query occur in few of the literals
+                return Math.sqrt(n);
+            }
+            case SUB_CLASS_OF:
+            case STRICT_SUB_CLASS_OF:
+            case DIRECT_SUB_CLASS_OF: {
+                boolean direct = type == QueryAtomType.DIRECT_SUB_CLASS_OF;
+                QueryArgument sub = args.get(0);
+                QueryArgument sup = args.get(1);
+                boolean subFixed = isFixed(sub, bound);
+                boolean supFixed = isFixed(sup, bound);
+                if (subFixed && supFixed) {
+                    return Math.min(1, (statistics.subClassEdges() + 1) / classes);
+                }
+                if (supFixed) {
+                    if (sup.isURI()) {
+                        return direct ? statistics.directSubClasses(sup.getValueAsIRI())
+                                : statistics.descendants(sup.getValueAsIRI()) + 1;
+                    }
+                    return Math.max(1, statistics.subClassEdges() / classes);
+                }
+                if (subFixed) {
+                    if (sub.isURI()) {
+                        return direct ? statistics.directSuperClasses(sub.getValueAsIRI())
+                                : statistics.ancestors(sub.getValueAsIRI()) + 2;
+                    }
+                    return Math.max(1, statistics.subClassEdges() / classes);
+                }
+                return classes + statistics.subClassEdges();
+            }
+            case EQUIVALENT_CLASS:
+            case DISJOINT_WITH:
+            case COMPLEMENT_OF:
+                return pairs(args, bound, classes);
+            case SUB_PROPERTY_OF:
+            case STRICT_SUB_PROPERTY_OF:
+            case DIRECT_SUB_PROPERTY_OF:
+            case EQUIVALENT_PROPERTY:
+            case INVERSE_OF:
+            case DOMAIN:
+            case RANGE:
+                return pairs(args, bound, properties);
+            case SAME_AS:
+                return pairs(args, bound, individuals);
+            case DIFFERENT_FROM: {
+                boolean fixed0 = isFixed(args.get(0), bound);
+                boolean fixed1 = isFixed(args.get(1), bound);
+                if (fixed0 && fixed1) {
+                    return 1;
+                }
+                return fixed0 || fixed1 ? individuals : individuals * individuals;
+            }
+            case CLASS:
+                return isFixed(args.get(0), bound) ? 1 : classes;
+            case INDIVIDUAL:
+                return isFixed(args.get(0), bound) ? 1 : individuals;
+            case PROPERTY:
+                return isFixed(args.get(0), bound) ? 1 : properties + annotationProperties;
+            case OBJECT_PROPERTY:
+                return isFixed(args.get(0), bound) ? 1 : Math.max(1, statistics.objectProperties());
+            case DATA_PROPERTY:
+                return isFixed(args.get(0), bound) ? 1 : Math.max(1, statistics.dataProperties());
+            case ANNOTATION_PROPERTY:
+                return isFixed(args.get(0), bound) ? 1 : annotationProperties;
+            case FUNCTIONAL:
+            case INVERSE_FUNCTIONAL:
+            case REFLEXIVE:
+            case IRREFLEXIVE:
+            case TRANSITIVE:
+            case SYMMETRIC:
+                return isFixed(args.get(0), bound) ? 1 : properties;
+            default:
+                return Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The estimate of a binary atom between entities of the same kind that are related to few other
+     * entities each.
+     */
+    private static double pairs(List<QueryArgument> args, Set<QueryArgument> bound, double entities) {
+        boolean fixed0 = isFixed(args.get(0), bound);
+        boolean fixed1 = isFixed(args.get(1), bound);
+        return fixed0 || fixed1 ? 1 : entities;
+    }
+
+    private static boolean isFixed(QueryArgument arg, Set<QueryArgument> bound) {
+        return !arg.isVar() || bound.contains(arg);
+    }
+}
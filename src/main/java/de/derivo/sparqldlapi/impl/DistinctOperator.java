@@ -0,0 +1,43 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Passes on the first occurrence of every solution of its input and drops all duplicates.
+ */
+class DistinctOperator implements QueryOperator {
+
+    private final QueryOperator input;
+
+    private final Set<QueryBindingImpl> seen = new HashSet<>();
+
+    DistinctOperator(QueryOperator input) {
+        this.input = input;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        seen.clear();
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        QueryBindingImpl binding;
+        while ((binding = input.next()) != null) {
+            if (seen.add(binding)) {
+                return binding;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        seen.clear();
+        input.close();
+    }
+}
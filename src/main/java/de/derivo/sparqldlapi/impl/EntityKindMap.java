@@ -0,0 +1,171 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Maps the IRIs of a signature to the kinds of entities they denote, as a bit mask.  An IRI can denote
+ * several kinds of entities (punning).  The map uses open addressing with linear probing over parallel
+ * arrays, so a lookup is a single probe sequence without allocation.
+ * <p>
+ * The map is kept up to date while it is read: changes are made under a write lock, and lookups probe
+ * optimistically without locking and only take the read lock if a change has been made meanwhile.
+ */
+class EntityKindMap {
+
+    static final int CLASS = 1;
+
+    static final int INDIVIDUAL = 1 << 1;
+
+    static final int OBJECT_PROPERTY = 1 << 2;
+
+    static final int DATA_PROPERTY = 1 << 3;
+
+    static final int ANNOTATION_PROPERTY = 1 << 4;
+
+    static final int DATATYPE = 1 << 5;
+
+    private IRI[] keys = new IRI[16];
+
+    private int[] kinds = new int[16];
+
+    private int size;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Add a kind to the kinds of an IRI.
+     */
+    void add(IRI iri, int kind) {
+        long stamp = lock.writeLock();
+        try {
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            int i = indexOf(iri, keys);
+            if (keys[i] == null) {
+                keys[i] = iri;
+                size++;
+            }
+            kinds[i] |= kind;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a kind from the kinds of an IRI.  The IRI is removed once it denotes no kind of entity anymore.
+     */
+    void remove(IRI iri, int kind) {
+        long stamp = lock.writeLock();
+        try {
+            int i = indexOf(iri, keys);
+            if (keys[i] == null) {
+                return;
+            }
+            kinds[i] &= ~kind;
+            if (kinds[i] == 0) {
+                delete(i);
+                size--;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get the kinds of an IRI.
+     *
+     * @return The bit mask of the kinds, 0 if the IRI is not in the signature.
+     */
+    int get(IRI iri) {
+        long stamp = lock.tryOptimisticRead();
+        int kind = probe(iri);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                kind = probe(iri);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Look up the kinds of an IRI.  Without a lock the arrays may be read in the middle of a change, which
+     * yields a wrong result, but never an exception or an endless probe, as at least half of the slots are
+     * empty.
+     */
+    private int probe(IRI iri) {
+        IRI[] keys = this.keys;
+        int[] kinds = this.kinds;
+        if (keys.length != kinds.length) {
+            // read in the middle of a resize
+            return 0;
+        }
+        int i = indexOf(iri, keys);
+        return keys[i] == null ? 0 : kinds[i];
+    }
+
+    /**
+     * Test whether an IRI denotes an entity of a kind.
+     */
+    boolean is(IRI iri, int kind) {
+        return (get(iri) & kind) != 0;
+    }
+
+    private static int indexOf(IRI iri, IRI[] keys) {
+        int mask = keys.length - 1;
+        int i = home(iri, mask);
+        while (keys[i] != null && !keys[i].equals(iri)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static int home(IRI iri, int mask) {
+        int h = iri.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Empty a slot and move the following IRIs of its probe sequence back, so no lookup stops early at the
+     * empty slot.
+     */
+    private void delete(int i) {
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == null) {
+                break;
+            }
+            int home = home(keys[j], mask);
+            // the IRI stays if its home slot lies cyclically between the empty slot and its own slot
+            boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!stays) {
+                keys[i] = keys[j];
+                kinds[i] = kinds[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        kinds[i] = 0;
+    }
+
+    private void resize() {
+        IRI[] oldKeys = keys;
+        int[] oldKinds = kinds;
+        keys = new IRI[oldKeys.length * 2];
+        kinds = new int[oldKeys.length * 2];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = indexOf(oldKeys[j], keys);
+                keys[i] = oldKeys[j];
+                kinds[i] = oldKinds[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins the solutions of its input with the solutions of a single query atom that is
+ * evaluated on its own.  The solutions of the atom are computed once and hashed on the
+ * arguments of the atom that are bound by the input (the join positions), instead of
+ * evaluating the atom again for every input solution.  The atom is only evaluated once
+ * the input has produced its first solution.
+ */
+class HashJoinOperator implements QueryOperator {
+
+    private final QueryOperator input;
+
+    private final QueryOperator atomPlan;
+
+    private final AtomTemplate atom;
+
+    private final int[] joinPositions;
+
+    private Map<List<QueryArgument>, List<QueryArgument[]>> table;
+
+    private QueryBindingImpl binding;
+
+    private List<QueryArgument[]> matches;
+
+    private int matchPos;
+
+    /**
+     * @param atomPlan      The plan that evaluates the atom on its own.
+     * @param joinPositions The positions of the arguments of the atom that are bound by the input.
+     */
+    HashJoinOperator(QueryOperator input, QueryOperator atomPlan, AtomTemplate atom, int[] joinPositions) {
+        this.input = input;
+        this.atomPlan = atomPlan;
+        this.atom = atom;
+        this.joinPositions = joinPositions;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        table = null;
+        binding = null;
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            if (binding != null && matchPos < matches.size()) {
+                QueryBindingImpl solution = binding.clone();
+                atom.apply(solution, matches.get(matchPos++));
+                return solution;
+            }
+            binding = input.next();
+            if (binding == null) {
+                return null;
+            }
+            if (table == null) {
+                table = build();
+            }
+            matches = table.get(joinKey(binding));
+            if (matches == null) {
+                matches = new ArrayList<>(0);
+            }
+            matchPos = 0;
+        }
+    }
+
+    private Map<List<QueryArgument>, List<QueryArgument[]>> build() throws QueryEngineException {
+        Map<List<QueryArgument>, List<QueryArgument[]>> table = new HashMap<>();
+        atomPlan.open();
+        try {
+            QueryBindingImpl solution;
+            while ((solution = atomPlan.next()) != null) {
+                table.computeIfAbsent(joinKey(solution), k -> new ArrayList<>()).add(atom.values(solution));
+            }
+        } finally {
+            atomPlan.close();
+        }
+        return table;
+    }
+
+    private List<QueryArgument> joinKey(QueryBindingImpl binding) {
+        QueryArgument[] key = new QueryArgument[joinPositions.length];
+        for (int i = 0; i < joinPositions.length; i++) {
+            key[i] = atom.get(joinPositions[i], binding);
+        }
+        return Arrays.asList(key);
+    }
+
+    @Override
+    public void close() {
+        table = null;
+        binding = null;
+        matches = null;
+        input.close();
+    }
+}
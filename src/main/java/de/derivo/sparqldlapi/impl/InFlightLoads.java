@@ -0,0 +1,63 @@
+package de.derivo.sparqldlapi.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Memoizes values that are expensive to compute, like the results of many reasoner calls, in a concurrent map
+ * of futures.  Unlike {@link ConcurrentMap#computeIfAbsent}, a value is computed outside of the map, so a long
+ * computation only holds up the threads that need the same key and never the threads that read or compute
+ * other keys of the map.  Concurrent lookups of the same missing key wait for a single computation.
+ */
+final class InFlightLoads {
+
+    private InFlightLoads() {
+    }
+
+    /**
+     * Get the value of a key, computing it in the calling thread if no other thread computes it already.
+     * A computation that fails is not memoized, the next lookup of the key computes the value again.
+     */
+    static <K, V> V get(ConcurrentMap<K, CompletableFuture<V>> values,
+                        K key,
+                        Function<? super K, ? extends V> computation) {
+        CompletableFuture<V> value = values.get(key);
+        if (value == null) {
+            CompletableFuture<V> load = new CompletableFuture<>();
+            value = values.putIfAbsent(key, load);
+            if (value == null) {
+                try {
+                    V result = computation.apply(key);
+                    load.complete(result);
+                    return result;
+                } catch (RuntimeException | Error e) {
+                    values.remove(key, load);
+                    load.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            // rethrow the failure of the computation as the thread that computed the value got it
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Test whether the value of a key has been computed.
+     */
+    static boolean isLoaded(ConcurrentMap<?, ? extends CompletableFuture<?>> values, Object key) {
+        CompletableFuture<?> value = values.get(key);
+        return value != null && value.isDone() && !value.isCompletedExceptionally();
+    }
+}
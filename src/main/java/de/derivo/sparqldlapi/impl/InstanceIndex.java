@@ -0,0 +1,104 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * The instances of classes as bit sets over dense individual ids, so conjunctions of type atoms on the same
+ * individual can be answered by intersecting bit sets.  The instances of a class are loaded on first use
+ * and kept for the version of the reasoner results they have been loaded from.  Individuals get their ids
+ * in the order they are first seen.
+ * <p>
+ * The instances of different classes are loaded independently, so a query that loads the instances of one
+ * class does not hold up queries on other classes.  Only the assignment of the ids is serialized.
+ */
+class InstanceIndex {
+
+    private final long version;
+
+    private final BiFunction<OWLClass, Boolean, Collection<OWLNamedIndividual>> loader;
+
+    /**
+     * The ids of the individuals, guarded by the map itself together with {@link #individuals}.
+     */
+    private final Map<OWLNamedIndividual, Integer> ids = new HashMap<>();
+
+    private final List<OWLNamedIndividual> individuals = new ArrayList<>();
+
+    private final ConcurrentMap<OWLClass, CompletableFuture<BitSet>> instances = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<OWLClass, CompletableFuture<BitSet>> directInstances = new ConcurrentHashMap<>();
+
+    /**
+     * @param version The version of the reasoner results.
+     * @param loader  Loads the (direct) instances of a class.
+     */
+    InstanceIndex(long version, BiFunction<OWLClass, Boolean, Collection<OWLNamedIndividual>> loader) {
+        this.version = version;
+        this.loader = loader;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the (direct) instances of a class.  The bit set is shared and must not be modified.
+     */
+    BitSet getInstances(OWLClass cls, boolean direct) {
+        return InFlightLoads.get(direct ? directInstances : instances, cls, c -> ids(loader.apply(c, direct)));
+    }
+
+    /**
+     * Test whether the (direct) instances of a class have been loaded already.
+     */
+    boolean isLoaded(OWLClass cls, boolean direct) {
+        return InFlightLoads.isLoaded(direct ? directInstances : instances, cls);
+    }
+
+    /**
+     * Test whether an individual is a (direct) instance of a class.
+     */
+    boolean isInstance(OWLClass cls, boolean direct, OWLNamedIndividual ind) {
+        BitSet bits = getInstances(cls, direct);
+        Integer id;
+        synchronized (ids) {
+            id = ids.get(ind);
+        }
+        // the individuals of the instances have ids, so an individual without an id is no instance
+        return id != null && bits.get(id);
+    }
+
+    private BitSet ids(Collection<OWLNamedIndividual> inds) {
+        BitSet bits = new BitSet();
+        synchronized (ids) {
+            for (OWLNamedIndividual ind : inds) {
+                Integer id = ids.get(ind);
+                if (id == null) {
+                    id = individuals.size();
+                    ids.put(ind, id);
+                    individuals.add(ind);
+                }
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    OWLNamedIndividual getIndividual(int id) {
+        synchronized (ids) {
+            return individuals.get(id);
+        }
+    }
+}
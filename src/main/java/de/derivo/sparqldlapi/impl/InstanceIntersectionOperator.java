@@ -0,0 +1,66 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Extends every solution of its input with the solutions of a conjunction of Type and DirectType atoms
+ * with the same individual variable and constant classes, e.g. Type(?x, A), Type(?x, B).  Instead of
+ * enumerating the instances of one class and checking the others for every instance, the instances of all
+ * classes are intersected at once.
+ */
+class InstanceIntersectionOperator implements QueryOperator {
+
+    private final QueryEngineImpl engine;
+
+    private final QueryOperator input;
+
+    private final List<AtomTemplate> atoms;
+
+    private final Cancellation cancellation;
+
+    private Iterator<QueryBindingImpl> candidates = Collections.emptyIterator();
+
+    InstanceIntersectionOperator(QueryEngineImpl engine, QueryOperator input, List<AtomTemplate> atoms,
+                                 Cancellation cancellation) {
+        this.engine = engine;
+        this.input = input;
+        this.atoms = atoms;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        candidates = Collections.emptyIterator();
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            cancellation.check();
+            if (candidates.hasNext()) {
+                QueryBindingImpl binding = candidates.next();
+                // the classes have been checked, this checks the individual
+                if (engine.isWellFormed(atoms.get(0), binding)) {
+                    return binding;
+                }
+                continue;
+            }
+            QueryBindingImpl binding = input.next();
+            if (binding == null) {
+                return null;
+            }
+            candidates = engine.evalInstances(atoms, binding);
+        }
+    }
+
+    @Override
+    public void close() {
+        candidates = Collections.emptyIterator();
+        input.close();
+    }
+}
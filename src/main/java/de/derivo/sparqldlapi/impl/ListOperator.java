@@ -0,0 +1,33 @@
+package de.derivo.sparqldlapi.impl;
+
+import java.util.List;
+
+/**
+ * Produces the bindings of a list, e.g. a chunk of the solutions of an atom that the atoms above it
+ * extend.
+ */
+class ListOperator implements QueryOperator {
+
+    private final List<QueryBindingImpl> bindings;
+
+    private int pos;
+
+    ListOperator(List<QueryBindingImpl> bindings) {
+        this.bindings = bindings;
+    }
+
+    @Override
+    public void open() {
+        pos = 0;
+    }
+
+    @Override
+    public QueryBindingImpl next() {
+        return pos < bindings.size() ? bindings.get(pos++) : null;
+    }
+
+    @Override
+    public void close() {
+        pos = bindings.size();
+    }
+}
@@ -0,0 +1,289 @@
+package de.derivo.sparqldlapi.impl;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cardinalities of the ontology (and its imports closure) that are used to estimate the number of
+ * solutions of query atoms: the number of asserted instances per class, assertions per property,
+ * annotation assertions per annotation property and the edges of the asserted class hierarchy.
+ * The statistics are collected when the engine is created and are maintained incrementally as a
+ * listener of the changes of the ontology.  The numbers of the entities of the signature are read from the
+ * copy of the signature the engine keeps up to date.
+ */
+class OntologyStatistics implements OWLOntologyChangeListener {
+
+    private final OWLOntology rootOntology;
+
+    private final Supplier<SignatureSnapshot> signature;
+
+    private final Multiset<IRI> classAssertions = HashMultiset.create();
+
+    private final Multiset<IRI> propertyAssertions = HashMultiset.create();
+
+    private final Multiset<IRI> annotationAssertions = HashMultiset.create();
+
+    /**
+     * Maps every class to its asserted direct sub classes.  An edge is stored once, no matter how many
+     * axioms assert it, so the number of axioms asserting it is kept separately.
+     */
+    private final SetMultimap<IRI, IRI> subClasses = HashMultimap.create();
+
+    private final SetMultimap<IRI, IRI> superClasses = HashMultimap.create();
+
+    private final Multiset<SubClassEdge> subClassAxioms = HashMultiset.create();
+
+    private int totalClassAssertions;
+
+    private int totalPropertyAssertions;
+
+    private int totalAnnotationAssertions;
+
+    /**
+     * The number of axioms that have been added or removed since the statistics have been collected.
+     */
+    private long changeCount;
+
+    private final Map<IRI, Integer> instances = new HashMap<>();
+
+    private final Map<IRI, Integer> descendants = new HashMap<>();
+
+    private final Map<IRI, Integer> ancestors = new HashMap<>();
+
+    OntologyStatistics(OWLOntology rootOntology, Supplier<SignatureSnapshot> signature) {
+        this.rootOntology = rootOntology;
+        this.signature = signature;
+        for (OWLOntology ontology : rootOntology.getImportsClosure()) {
+            for (OWLAxiom ax : ontology.getLogicalAxioms()) {
+                count(ax, 1);
+            }
+            for (OWLAnnotationAssertionAxiom ax : ontology.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+                count(ax, 1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> importsClosure = rootOntology.getImportsClosure();
+        long count = changeCount;
+        for (OWLOntologyChange change : changes) {
+            if (!importsClosure.contains(change.getOntology())) {
+                continue;
+            }
+            if (change.isAddAxiom()) {
+                count(change.getAxiom(), 1);
+                changeCount++;
+            }
+            else if (change.isRemoveAxiom()) {
+                count(change.getAxiom(), -1);
+                changeCount++;
+            }
+        }
+        if (changeCount != count) {
+            // the assertions or the hierarchy may have changed
+            instances.clear();
+            descendants.clear();
+            ancestors.clear();
+        }
+    }
+
+    private void count(OWLAxiom ax, int delta) {
+        if (ax instanceof OWLClassAssertionAxiom) {
+            OWLClassExpression cls = ((OWLClassAssertionAxiom) ax).getClassExpression();
+            if (!cls.isAnonymous()) {
+                add(classAssertions, cls.asOWLClass().getIRI(), delta);
+            }
+            totalClassAssertions += delta;
+        }
+        else if (ax instanceof OWLPropertyAssertionAxiom) {
+            OWLPropertyExpression prop = ((OWLPropertyAssertionAxiom<?, ?>) ax).getProperty();
+            if (prop instanceof OWLProperty) {
+                add(propertyAssertions, ((OWLProperty) prop).getIRI(), delta);
+            }
+            totalPropertyAssertions += delta;
+        }
+        else if (ax instanceof OWLAnnotationAssertionAxiom) {
+            add(annotationAssertions, ((OWLAnnotationAssertionAxiom) ax).getProperty().getIRI(), delta);
+            totalAnnotationAssertions += delta;
+        }
+        else if (ax instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) ax;
+            if (subClassOf.getSubClass().isAnonymous() || subClassOf.getSuperClass().isAnonymous()) {
+                return;
+            }
+            SubClassEdge edge = new SubClassEdge(subClassOf.getSubClass().asOWLClass().getIRI(),
+                                                 subClassOf.getSuperClass().asOWLClass().getIRI());
+            add(subClassAxioms, edge, delta);
+            if (subClassAxioms.contains(edge)) {
+                subClasses.put(edge.sup, edge.sub);
+                superClasses.put(edge.sub, edge.sup);
+            }
+            else {
+                subClasses.remove(edge.sup, edge.sub);
+                superClasses.remove(edge.sub, edge.sup);
+            }
+        }
+    }
+
+    private static <E> void add(Multiset<E> multiset, E element, int delta) {
+        if (delta > 0) {
+            multiset.add(element, delta);
+        }
+        else {
+            multiset.remove(element, -delta);
+        }
+    }
+
+    /**
+     * Get the number of instances of a class, including the asserted instances of its sub classes.
+     */
+    synchronized int instances(IRI cls) {
+        if (cls.isThing()) {
+            return individuals();
+        }
+        Integer count = instances.get(cls);
+        if (count == null) {
+            count = 0;
+            for (IRI c : closure(cls, subClasses)) {
+                count += classAssertions.count(c);
+            }
+            instances.put(cls, count);
+        }
+        return count;
+    }
+
+    synchronized int classAssertions() {
+        return totalClassAssertions;
+    }
+
+    synchronized int propertyAssertions(IRI property) {
+        return propertyAssertions.count(property);
+    }
+
+    synchronized int propertyAssertions() {
+        return totalPropertyAssertions;
+    }
+
+    synchronized int annotationAssertions(IRI property) {
+        return annotationAssertions.count(property);
+    }
+
+    synchronized int annotationAssertions() {
+        return totalAnnotationAssertions;
+    }
+
+    /**
+     * Get the number of axioms that have been added or removed since the statistics have been collected.
+     */
+    synchronized long changes() {
+        return changeCount;
+    }
+
+    /**
+     * Get the number of axioms the statistics are collected from.
+     */
+    synchronized int size() {
+        return totalClassAssertions + totalPropertyAssertions + totalAnnotationAssertions + subClassAxioms.size();
+    }
+
+    synchronized int directSubClasses(IRI cls) {
+        return subClasses.get(cls).size();
+    }
+
+    synchronized int directSuperClasses(IRI cls) {
+        return superClasses.get(cls).size();
+    }
+
+    /**
+     * Get the number of (asserted) direct and indirect sub classes of a class.
+     */
+    synchronized int descendants(IRI cls) {
+        return descendants.computeIfAbsent(cls, c -> closure(c, subClasses).size() - 1);
+    }
+
+    /**
+     * Get the number of (asserted) direct and indirect super classes of a class.
+     */
+    synchronized int ancestors(IRI cls) {
+        return ancestors.computeIfAbsent(cls, c -> closure(c, superClasses).size() - 1);
+    }
+
+    /**
+     * Get the number of sub class edges of the asserted hierarchy.
+     */
+    synchronized int subClassEdges() {
+        return subClasses.size();
+    }
+
+    int individuals() {
+        return signature.get().getIndividuals().size();
+    }
+
+    int classes() {
+        return signature.get().getClasses().size();
+    }
+
+    int objectProperties() {
+        return signature.get().getObjectProperties().size();
+    }
+
+    int dataProperties() {
+        return signature.get().getDataProperties().size();
+    }
+
+    int annotationProperties() {
+        return signature.get().getAnnotationProperties().size();
+    }
+
+    private static Set<IRI> closure(IRI cls, SetMultimap<IRI, IRI> edges) {
+        Set<IRI> closure = new HashSet<>();
+        Deque<IRI> todo = new ArrayDeque<>();
+        todo.push(cls);
+        while (!todo.isEmpty()) {
+            IRI c = todo.pop();
+            if (closure.add(c)) {
+                edges.get(c).forEach(todo::push);
+            }
+        }
+        return closure;
+    }
+
+    private static final class SubClassEdge {
+
+        private final IRI sub;
+
+        private final IRI sup;
+
+        SubClassEdge(IRI sub, IRI sup) {
+            this.sub = sub;
+            this.sup = sup;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SubClassEdge)) {
+                return false;
+            }
+            SubClassEdge edge = (SubClassEdge) obj;
+            return sub.equals(edge.sub) && sup.equals(edge.sup);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sub.hashCode() + sup.hashCode();
+        }
+    }
+}
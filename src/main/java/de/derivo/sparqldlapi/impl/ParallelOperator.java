@@ -0,0 +1,137 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates the atoms of a component in parallel.  The solutions of the outermost atom are split into
+ * chunks, and the operators of the remaining atoms are instantiated for every chunk and evaluated as
+ * fork-join tasks.  The subtrees of different solutions share no state, and the solutions of the chunks
+ * are concatenated in order, so the solutions are the same and come in the same order as with sequential
+ * evaluation.  The component is evaluated completely when the operator is opened.
+ */
+class ParallelOperator implements QueryOperator {
+
+    /**
+     * The number of chunks per worker thread of the pool, more chunks balance the load better but hash
+     * joins build their tables once per chunk.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final QueryOperator outermost;
+
+    private final List<QueryPlan.Step> steps;
+
+    private final ForkJoinPool pool;
+
+    private final Cancellation cancellation;
+
+    private Iterator<QueryBindingImpl> solutions = Collections.emptyIterator();
+
+    /**
+     * @param outermost    The operator of the outermost atom.
+     * @param steps        The steps that create the operators of the remaining atoms.
+     * @param pool         The pool the chunks are evaluated in.
+     * @param cancellation The token the operators of the chunks stop at.
+     */
+    ParallelOperator(QueryOperator outermost, List<QueryPlan.Step> steps, ForkJoinPool pool,
+                     Cancellation cancellation) {
+        this.outermost = outermost;
+        this.steps = steps;
+        this.pool = pool;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        List<QueryBindingImpl> candidates = new ArrayList<>();
+        outermost.open();
+        try {
+            QueryBindingImpl binding;
+            while ((binding = outermost.next()) != null) {
+                candidates.add(binding);
+            }
+        } finally {
+            outermost.close();
+        }
+        int grain = Math.max(1, candidates.size() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        try {
+            solutions = pool.invoke(new ChunkTask(candidates, grain)).iterator();
+        } catch (RuntimeException e) {
+            // the exception may have been rethrown by the pool as the cause of a copy
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof QueryEngineException) {
+                    throw (QueryEngineException) t;
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public QueryBindingImpl next() {
+        return solutions.hasNext() ? solutions.next() : null;
+    }
+
+    @Override
+    public void close() {
+        solutions = Collections.emptyIterator();
+    }
+
+    private final class ChunkTask extends RecursiveTask<List<QueryBindingImpl>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<QueryBindingImpl> candidates;
+
+        private final int grain;
+
+        ChunkTask(List<QueryBindingImpl> candidates, int grain) {
+            this.candidates = candidates;
+            this.grain = grain;
+        }
+
+        @Override
+        protected List<QueryBindingImpl> compute() {
+            try {
+                // the pool cannot be interrupted, so the chunks stop at the token of the query instead
+                cancellation.check();
+            } catch (QueryEngineException e) {
+                throw new RuntimeException(e);
+            }
+            if (candidates.size() > grain) {
+                int mid = candidates.size() / 2;
+                ChunkTask right = new ChunkTask(candidates.subList(mid, candidates.size()), grain);
+                right.fork();
+                List<QueryBindingImpl> result = new ChunkTask(candidates.subList(0, mid), grain).compute();
+                result.addAll(right.join());
+                return result;
+            }
+            QueryOperator plan = new ListOperator(candidates);
+            for (QueryPlan.Step step : steps) {
+                plan = step.apply(plan, cancellation);
+            }
+            List<QueryBindingImpl> result = new ArrayList<>();
+            try {
+                plan.open();
+                try {
+                    QueryBindingImpl binding;
+                    while ((binding = plan.next()) != null) {
+                        result.add(binding);
+                    }
+                } finally {
+                    plan.close();
+                }
+            } catch (QueryEngineException e) {
+                throw new RuntimeException(e);
+            }
+            return result;
+        }
+    }
+}
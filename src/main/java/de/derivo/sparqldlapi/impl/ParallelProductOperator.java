@@ -0,0 +1,141 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Combines the solutions of the independent components of a group with the cartesian product, like a chain
+ * of {@link ProductOperator}s, but evaluates the components concurrently on an executor when it is opened.
+ * As soon as one component has no solutions, the group is cancelled, so the operators of the other
+ * components stop at their next candidate solution, as the product has no solutions either.  The solutions
+ * come in the same order as from the chain of product operators.
+ */
+class ParallelProductOperator implements QueryOperator {
+
+    private final List<QueryOperator> inputs;
+
+    private final Executor executor;
+
+    /**
+     * The token of the group, which the operators of the components have been created with.
+     */
+    private final Cancellation cancellation;
+
+    private List<List<QueryBindingImpl>> solutions;
+
+    /**
+     * The position in the solutions of every input, the last input varies fastest.
+     */
+    private int[] positions;
+
+    ParallelProductOperator(List<QueryOperator> inputs, Executor executor, Cancellation cancellation) {
+        this.inputs = inputs;
+        this.executor = executor;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        try {
+            setSolutions(ConcurrentEvaluation.join(evaluateComponents()));
+        } catch (QueryEngineException | RuntimeException e) {
+            cancellation.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluate the whole group without waiting for it, e.g. as one of the groups of a
+     * {@link ParallelUnionOperator}.  The product is built by the task of the component that completes last,
+     * so no task of the executor waits for the others.
+     *
+     * @return The solutions of the group.
+     */
+    CompletableFuture<List<QueryBindingImpl>> evaluate() {
+        return evaluateComponents().thenApply(results -> {
+            List<QueryBindingImpl> product = new ArrayList<>();
+            try {
+                setSolutions(results);
+                QueryBindingImpl binding;
+                while ((binding = next()) != null) {
+                    product.add(binding);
+                }
+            } catch (QueryEngineException e) {
+                throw new CompletionException(e);
+            } finally {
+                close();
+            }
+            return product;
+        });
+    }
+
+    private CompletableFuture<List<List<QueryBindingImpl>>> evaluateComponents() {
+        List<CompletableFuture<List<QueryBindingImpl>>> evaluations = new ArrayList<>();
+        for (QueryOperator input : inputs) {
+            CompletableFuture<List<QueryBindingImpl>> evaluation =
+                    ConcurrentEvaluation.start(input, executor, cancellation);
+            evaluation.whenComplete((s, e) -> {
+                // the other components are not needed if this one has no solutions or has failed
+                if (e != null || s.isEmpty()) {
+                    cancellation.cancel();
+                }
+            });
+            evaluations.add(evaluation);
+        }
+        return CompletableFuture.allOf(evaluations.toArray(new CompletableFuture<?>[evaluations.size()]))
+                                .thenApply(v -> {
+                                    List<List<QueryBindingImpl>> results = new ArrayList<>();
+                                    for (CompletableFuture<List<QueryBindingImpl>> evaluation : evaluations) {
+                                        results.add(evaluation.join());
+                                    }
+                                    return results;
+                                });
+    }
+
+    private void setSolutions(List<List<QueryBindingImpl>> results) throws QueryEngineException {
+        solutions = results;
+        positions = new int[inputs.size()];
+        for (List<QueryBindingImpl> s : results) {
+            if (s.isEmpty()) {
+                positions = null;
+                return;
+            }
+        }
+        // every component has solutions, so the group has only been cancelled together with the query, and
+        // the solutions of the components may be incomplete
+        cancellation.check();
+    }
+
+    @Override
+    public QueryBindingImpl next() {
+        if (positions == null) {
+            return null;
+        }
+        QueryBindingImpl binding = solutions.get(0).get(positions[0]).clone();
+        for (int i = 1; i < positions.length; i++) {
+            binding.set(solutions.get(i).get(positions[i]));
+        }
+        // advance to the next combination
+        int i = positions.length - 1;
+        while (i >= 0 && ++positions[i] == solutions.get(i).size()) {
+            positions[i] = 0;
+            i--;
+        }
+        if (i < 0) {
+            positions = null;
+        }
+        return binding;
+    }
+
+    @Override
+    public void close() {
+        cancellation.cancel();
+        solutions = null;
+        positions = null;
+    }
+}
@@ -0,0 +1,78 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Concatenates the solutions of the groups of a query (WHERE {} OR WHERE {} ...) like a
+ * {@link UnionOperator}, but evaluates all groups concurrently on an executor when it is opened.  The
+ * solutions of a group are returned as soon as the group and all groups before it have been evaluated,
+ * in the same order as from the union operator.  Only the thread that pulls the solutions waits for the
+ * groups, see {@link ConcurrentEvaluation}.
+ */
+class ParallelUnionOperator implements QueryOperator {
+
+    private final List<QueryOperator> inputs;
+
+    private final Executor executor;
+
+    /**
+     * The token of the union, the tokens of the groups are its children.
+     */
+    private final Cancellation cancellation;
+
+    private List<CompletableFuture<List<QueryBindingImpl>>> evaluations = Collections.emptyList();
+
+    private int current;
+
+    private Iterator<QueryBindingImpl> solutions = Collections.emptyIterator();
+
+    ParallelUnionOperator(List<QueryOperator> inputs, Executor executor, Cancellation cancellation) {
+        this.inputs = inputs;
+        this.executor = executor;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public void open() {
+        evaluations = new ArrayList<>();
+        for (QueryOperator input : inputs) {
+            evaluations.add(ConcurrentEvaluation.start(input, executor, cancellation));
+        }
+        current = 0;
+        solutions = Collections.emptyIterator();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (!solutions.hasNext()) {
+            if (current == evaluations.size()) {
+                return null;
+            }
+            try {
+                solutions = ConcurrentEvaluation.join(evaluations.get(current++)).iterator();
+                // the solutions of a group may be incomplete once the query has been cancelled
+                cancellation.check();
+            } catch (QueryEngineException | RuntimeException e) {
+                cancellation.cancel();
+                throw e;
+            }
+        }
+        return solutions.next();
+    }
+
+    @Override
+    public void close() {
+        // the groups that have not been consumed are not needed anymore
+        cancellation.cancel();
+        evaluations = Collections.emptyList();
+        current = 0;
+        solutions = Collections.emptyIterator();
+    }
+}
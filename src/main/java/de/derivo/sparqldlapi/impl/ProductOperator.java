@@ -0,0 +1,97 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combines the solutions of two independent components with the cartesian product.
+ * The left input is streamed.  The right input is only opened once the left input has
+ * produced its first solution and is pulled incrementally while it is combined with that
+ * solution, so a consumer that stops early does not force a full evaluation of the right
+ * input.  Its solutions are buffered and replayed for all further left solutions.
+ */
+class ProductOperator implements QueryOperator {
+
+    private final QueryOperator left;
+
+    private final QueryOperator right;
+
+    private List<QueryBindingImpl> rightBindings;
+
+    private boolean rightOpen;
+
+    private QueryBindingImpl leftBinding;
+
+    private int rightPos;
+
+    ProductOperator(QueryOperator left, QueryOperator right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        rightBindings = null;
+        rightOpen = false;
+        leftBinding = null;
+        left.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (true) {
+            if (leftBinding == null) {
+                leftBinding = left.next();
+                if (leftBinding == null) {
+                    return null;
+                }
+                rightPos = 0;
+                if (rightBindings == null) {
+                    // the right side is only evaluated if the left side has a solution at all
+                    rightBindings = new ArrayList<>();
+                    right.open();
+                    rightOpen = true;
+                }
+            }
+            QueryBindingImpl rightBinding = null;
+            if (rightPos < rightBindings.size()) {
+                rightBinding = rightBindings.get(rightPos++);
+            }
+            else if (rightOpen) {
+                rightBinding = right.next();
+                if (rightBinding == null) {
+                    right.close();
+                    rightOpen = false;
+                }
+                else {
+                    rightBindings.add(rightBinding);
+                    rightPos++;
+                }
+            }
+            if (rightBinding == null) {
+                if (rightBindings.isEmpty()) {
+                    // the right side has no solutions, so neither has the product
+                    return null;
+                }
+                leftBinding = null;
+                continue;
+            }
+            QueryBindingImpl binding = leftBinding.clone();
+            binding.set(rightBinding);
+            return binding;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (rightOpen) {
+            right.close();
+            rightOpen = false;
+        }
+        rightBindings = null;
+        leftBinding = null;
+        left.close();
+    }
+}
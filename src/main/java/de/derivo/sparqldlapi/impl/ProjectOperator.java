@@ -0,0 +1,40 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.Set;
+
+/**
+ * Restricts the solutions of its input to the result variables of the query.
+ */
+class ProjectOperator implements QueryOperator {
+
+    private final QueryOperator input;
+
+    private final Set<QueryArgument> resultVars;
+
+    ProjectOperator(QueryOperator input, Set<QueryArgument> resultVars) {
+        this.input = input;
+        this.resultVars = resultVars;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        QueryBindingImpl binding = input.next();
+        if (binding == null) {
+            return null;
+        }
+        return binding.cloneAndFilter(resultVars);
+    }
+
+    @Override
+    public void close() {
+        input.close();
+    }
+}
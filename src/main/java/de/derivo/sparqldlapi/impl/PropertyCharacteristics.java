@@ -0,0 +1,123 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.types.QueryAtomType;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The properties of the signature that have a characteristic (functional, inverse functional, reflexive,
+ * irreflexive, transitive, symmetric) according to a reasoner.  The set of properties of a characteristic
+ * is computed with one entailment check per property when it is first needed and kept for the version
+ * of the reasoner results it has been computed from.  Characteristics computed while the reasoner has
+ * pending changes are not kept beyond a single evaluation, so a test for a single property is then passed
+ * to the reasoner directly rather than paying for the whole set.
+ */
+class PropertyCharacteristics {
+
+    private final OWLReasoner reasoner;
+
+    private final OWLDataFactory factory;
+
+    private final long version;
+
+    private final Set<OWLObjectProperty> objectProperties;
+
+    private final Set<OWLDataProperty> dataProperties;
+
+    private final ConcurrentMap<QueryAtomType, CompletableFuture<Set<OWLProperty>>> characteristics =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @param version          The version of the reasoner results, or -1 while the reasoner has pending changes.
+     * @param objectProperties The object properties of the signature.
+     * @param dataProperties   The data properties of the signature.  Only data properties can be functional.
+     */
+    PropertyCharacteristics(OWLReasoner reasoner,
+                            OWLDataFactory factory,
+                            long version,
+                            Set<OWLObjectProperty> objectProperties,
+                            Set<OWLDataProperty> dataProperties) {
+        this.reasoner = reasoner;
+        this.factory = factory;
+        this.version = version;
+        this.objectProperties = objectProperties;
+        this.dataProperties = dataProperties;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the properties of the signature that have a characteristic.  Functional data properties come
+     * before functional object properties.
+     *
+     * @param characteristic The atom type of the characteristic, e.g. {@link QueryAtomType#TRANSITIVE}.
+     */
+    Set<OWLProperty> get(QueryAtomType characteristic) {
+        return InFlightLoads.get(characteristics, characteristic, this::compute);
+    }
+
+    private Set<OWLProperty> compute(QueryAtomType characteristic) {
+        Set<OWLProperty> properties = new LinkedHashSet<>();
+        if (characteristic == QueryAtomType.FUNCTIONAL) {
+            for (OWLDataProperty property : dataProperties) {
+                if (reasoner.isEntailed(factory.getOWLFunctionalDataPropertyAxiom(property))) {
+                    properties.add(property);
+                }
+            }
+        }
+        for (OWLObjectProperty property : objectProperties) {
+            if (reasoner.isEntailed(axiom(characteristic, property))) {
+                properties.add(property);
+            }
+        }
+        return Collections.unmodifiableSet(properties);
+    }
+
+    /**
+     * Test whether an object property has a characteristic.
+     */
+    boolean has(QueryAtomType characteristic, OWLObjectProperty property) {
+        if (version < 0 || !objectProperties.contains(property)) {
+            return reasoner.isEntailed(axiom(characteristic, property));
+        }
+        return get(characteristic).contains(property);
+    }
+
+    /**
+     * Test whether a data property is functional.
+     */
+    boolean isFunctional(OWLDataProperty property) {
+        if (version < 0 || !dataProperties.contains(property)) {
+            return reasoner.isEntailed(factory.getOWLFunctionalDataPropertyAxiom(property));
+        }
+        return get(QueryAtomType.FUNCTIONAL).contains(property);
+    }
+
+    private OWLAxiom axiom(QueryAtomType characteristic, OWLObjectProperty property) {
+        switch (characteristic) {
+            case FUNCTIONAL:
+                return factory.getOWLFunctionalObjectPropertyAxiom(property);
+            case INVERSE_FUNCTIONAL:
+                return factory.getOWLInverseFunctionalObjectPropertyAxiom(property);
+            case REFLEXIVE:
+                return factory.getOWLReflexiveObjectPropertyAxiom(property);
+            case IRREFLEXIVE:
+                return factory.getOWLIrreflexiveObjectPropertyAxiom(property);
+            case TRANSITIVE:
+                return factory.getOWLTransitiveObjectPropertyAxiom(property);
+            case SYMMETRIC:
+                return factory.getOWLSymmetricObjectPropertyAxiom(property);
+            default:
+                throw new IllegalArgumentException("Not a property characteristic: " + characteristic);
+        }
+    }
+}
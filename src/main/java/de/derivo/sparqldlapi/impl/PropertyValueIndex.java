@@ -0,0 +1,270 @@
+package de.derivo.sparqldlapi.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The values of object properties partitioned by property, with a forward (subject to objects) and a
+ * reverse (object to subjects) list per property.  The asserted lists are built from the object property
+ * assertions of the imports closure when the index is created and are maintained as a listener of the
+ * changes of the ontology, so neither building nor maintaining them involves the reasoner.
+ * <p>
+ * With inference enabled (the default), the lists of a property also hold the values the reasoner infers
+ * for every individual of the signature, so they hold the entailed values.  Without inference, only the
+ * asserted lists are used.  These are computed on first use of the property and kept for the version
+ * of the reasoner results they have been computed from, so they cost one reasoner call per individual
+ * after every change of the ontology.  The inferred lists of different properties are computed
+ * independently, so computing the lists of one property does not hold up lookups of other properties.
+ */
+class PropertyValueIndex implements OWLOntologyChangeListener {
+
+    /**
+     * The lists of a single property.
+     */
+    interface PropertyValues {
+
+        /**
+         * Get the subjects that have a value.
+         */
+        Collection<OWLNamedIndividual> getSubjects();
+
+        /**
+         * Get the values of a subject.
+         */
+        Collection<OWLNamedIndividual> getValues(OWLNamedIndividual subject);
+
+        /**
+         * Get the subjects that have a given value.
+         */
+        Collection<OWLNamedIndividual> getSubjects(OWLNamedIndividual value);
+    }
+
+    private static final class Postings implements PropertyValues {
+
+        private final SetMultimap<OWLNamedIndividual, OWLNamedIndividual> forward = LinkedHashMultimap.create();
+
+        private final SetMultimap<OWLNamedIndividual, OWLNamedIndividual> reverse = LinkedHashMultimap.create();
+
+        void put(OWLNamedIndividual subject, OWLNamedIndividual value) {
+            forward.put(subject, value);
+            reverse.put(value, subject);
+        }
+
+        void remove(OWLNamedIndividual subject, OWLNamedIndividual value) {
+            forward.remove(subject, value);
+            reverse.remove(value, subject);
+        }
+
+        @Override
+        public Collection<OWLNamedIndividual> getSubjects() {
+            return forward.keySet();
+        }
+
+        @Override
+        public Collection<OWLNamedIndividual> getValues(OWLNamedIndividual subject) {
+            return forward.get(subject);
+        }
+
+        @Override
+        public Collection<OWLNamedIndividual> getSubjects(OWLNamedIndividual value) {
+            return reverse.get(value);
+        }
+    }
+
+    /**
+     * The inferred lists of the properties that have been used for a version of the reasoner results.
+     */
+    private static final class InferredPostings {
+
+        private final long version;
+
+        private final ConcurrentMap<OWLObjectProperty, CompletableFuture<Postings>> postings =
+                new ConcurrentHashMap<>();
+
+        InferredPostings(long version) {
+            this.version = version;
+        }
+    }
+
+    private final CachingReasoner reasoner;
+
+    private final Supplier<Set<OWLNamedIndividual>> individuals;
+
+    /**
+     * The asserted lists, guarded by the map itself.  They are changed in place, so they are copied when
+     * they are handed out.
+     */
+    private final Map<OWLObjectProperty, Postings> asserted = new HashMap<>();
+
+    private volatile boolean inference = true;
+
+    private volatile InferredPostings inferred;
+
+    /**
+     * @param individuals The individuals of the signature, which the reasoner is asked for the inferred values.
+     */
+    PropertyValueIndex(CachingReasoner reasoner, Supplier<Set<OWLNamedIndividual>> individuals) {
+        this.reasoner = reasoner;
+        this.individuals = individuals;
+        loadAssertions();
+    }
+
+    private void loadAssertions() {
+        for (OWLOntology ontology : reasoner.getRootOntology().getImportsClosure()) {
+            for (OWLObjectPropertyAssertionAxiom ax : ontology.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION)) {
+                if (isIndexed(ax)) {
+                    postings(asserted, ax).put(ax.getSubject().asOWLNamedIndividual(),
+                                               ax.getObject().asOWLNamedIndividual());
+                }
+            }
+        }
+    }
+
+    private static boolean isIndexed(OWLObjectPropertyAssertionAxiom ax) {
+        return !ax.getProperty().isAnonymous() && ax.getSubject().isNamed() && ax.getObject().isNamed();
+    }
+
+    private static Postings postings(Map<OWLObjectProperty, Postings> postings, OWLObjectPropertyAssertionAxiom ax) {
+        return postings.computeIfAbsent(ax.getProperty().asOWLObjectProperty(), p -> new Postings());
+    }
+
+    /**
+     * Sets whether the lists also hold the values the reasoner infers, enabled by default.
+     */
+    void setInference(boolean inference) {
+        this.inference = inference;
+    }
+
+    boolean isInference() {
+        return inference;
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        OWLOntology rootOntology = reasoner.getRootOntology();
+        Set<OWLOntology> importsClosure = rootOntology.getImportsClosure();
+        synchronized (asserted) {
+            for (OWLOntologyChange change : changes) {
+                if (change.isImportChange()) {
+                    // the imports closure has changed, so the assertions of whole ontologies may have to go
+                    asserted.clear();
+                    loadAssertions();
+                    return;
+                }
+                if (!change.isAxiomChange()
+                        || !importsClosure.contains(change.getOntology())
+                        || !(change.getAxiom() instanceof OWLObjectPropertyAssertionAxiom)) {
+                    continue;
+                }
+                OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) change.getAxiom();
+                if (!isIndexed(ax)) {
+                    continue;
+                }
+                OWLNamedIndividual subject = ax.getSubject().asOWLNamedIndividual();
+                OWLNamedIndividual value = ax.getObject().asOWLNamedIndividual();
+                if (change.isAddAxiom()) {
+                    postings(asserted, ax).put(subject, value);
+                }
+                // the value is still asserted if another ontology or an annotated copy asserts it
+                else if (!rootOntology.containsAxiom(ax, Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS)) {
+                    postings(asserted, ax).remove(subject, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the lists of a property.  The lists are meant for the evaluation of a single atom: while the
+     * reasoner has pending changes, the inferred lists are computed for the returned object only.
+     */
+    PropertyValues get(OWLObjectProperty property) {
+        if (inference) {
+            return inferred(property);
+        }
+        return new PropertyValues() {
+
+            @Override
+            public Collection<OWLNamedIndividual> getSubjects() {
+                return asserted(property, p -> p.forward.keySet());
+            }
+
+            @Override
+            public Collection<OWLNamedIndividual> getValues(OWLNamedIndividual subject) {
+                return asserted(property, p -> p.forward.get(subject));
+            }
+
+            @Override
+            public Collection<OWLNamedIndividual> getSubjects(OWLNamedIndividual value) {
+                return asserted(property, p -> p.reverse.get(value));
+            }
+        };
+    }
+
+    private Collection<OWLNamedIndividual> asserted(OWLObjectProperty property,
+                                                    Function<Postings, Collection<OWLNamedIndividual>> list) {
+        synchronized (asserted) {
+            Postings p = asserted.get(property);
+            return p == null ? ImmutableList.of() : ImmutableList.copyOf(list.apply(p));
+        }
+    }
+
+    /**
+     * Get the inferred lists of a property for the current results of the reasoner.  While the reasoner has
+     * pending changes, the lists are computed for a single evaluation and not kept.
+     */
+    private Postings inferred(OWLObjectProperty property) {
+        long version = reasoner.version();
+        if (version < 0) {
+            return infer(property);
+        }
+        InferredPostings current = inferred;
+        if (current == null || current.version != version) {
+            synchronized (this) {
+                current = inferred;
+                if (current == null || current.version != version) {
+                    current = new InferredPostings(version);
+                    inferred = current;
+                }
+            }
+        }
+        return InFlightLoads.get(current.postings, property, this::infer);
+    }
+
+    private Postings infer(OWLObjectProperty property) {
+        Postings p = new Postings();
+        for (OWLNamedIndividual subject : individuals.get()) {
+            NodeSet<OWLNamedIndividual> values =
+                    reasoner.callDelegate(r -> r.getObjectPropertyValues(subject, property),
+                                          "getObjectPropertyValues", subject, property);
+            for (OWLNamedIndividual value : values.getFlattened()) {
+                p.put(subject, value);
+            }
+        }
+        // a bound atom is satisfied by an asserted value even if the reasoner does not return it
+        synchronized (asserted) {
+            Postings assertedPostings = asserted.get(property);
+            if (assertedPostings != null) {
+                for (Map.Entry<OWLNamedIndividual, OWLNamedIndividual> entry : assertedPostings.forward.entries()) {
+                    p.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return p;
+    }
+}
@@ -4,8 +4,11 @@
 
 package de.derivo.sparqldlapi.impl;
 
-import java.util.HashMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import de.derivo.sparqldlapi.QueryArgument;
@@ -13,19 +16,70 @@ import de.derivo.sparqldlapi.QueryBinding;
 
 /**
  * Concrete implementation of the QueryBinding interface.
+ * The values are stored in an array indexed by the slots of a VarTable.  Bindings of
+ * the same query share the table of the query, so cloning a binding only copies the array.
+ * Arguments that are not in the table are added to a private copy of the table.
  * 
  * @author mvolke
  */
 public class QueryBindingImpl implements QueryBinding
 {
-	private Map<QueryArgument, QueryArgument> bindingMap = new HashMap<QueryArgument, QueryArgument>();
+	private VarTable table;
+	private boolean ownsTable;
+	private QueryArgument[] values;
+	private int size;
 	
 	public QueryBindingImpl()
-	{}
+	{
+		this(new VarTable());
+		ownsTable = true;
+	}
+	
+	/**
+	 * Create an empty binding for the variables of the given table.
+	 * 
+	 * @param table
+	 */
+	public QueryBindingImpl(VarTable table)
+	{
+		this.table = table;
+		values = new QueryArgument[table.size()];
+	}
 	
 	public QueryBindingImpl(Map<QueryArgument, QueryArgument> bindings)
 	{
-		bindingMap.putAll(bindings);
+		this();
+		set(bindings);
+	}
+	
+	private QueryBindingImpl(QueryBindingImpl binding)
+	{
+		table = binding.shareTable();
+		ownsTable = table != binding.table;
+		values = binding.values.clone();
+		size = binding.size;
+	}
+	
+	/**
+	 * Get the table for a copy of this binding without changing this binding, so a binding can be cloned by
+	 * several threads at once.  A table this binding extends in place is copied, a shared table is shared
+	 * and only copied by a binding that has to extend it.
+	 * 
+	 * @return
+	 */
+	private VarTable shareTable()
+	{
+		return ownsTable ? table.copy() : table;
+	}
+	
+	/**
+	 * Get the table that assigns the slots of this binding.
+	 * 
+	 * @return
+	 */
+	public VarTable getVarTable()
+	{
+		return table;
 	}
 	
 	/**
@@ -36,7 +90,22 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public QueryArgument get(QueryArgument arg)
 	{
-		return bindingMap.get(arg);
+		int slot = table.slot(arg);
+		if(slot < 0 || slot >= values.length) {
+			return null;
+		}
+		return values[slot];
+	}
+	
+	/**
+	 * Get the binding of a slot.
+	 * 
+	 * @param slot
+	 * @return Null if the slot is not bound, yet, or the binding otherwise.
+	 */
+	public QueryArgument get(int slot)
+	{
+		return slot < values.length ? values[slot] : null;
 	}
 	
 	/**
@@ -49,7 +118,33 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public void set(QueryArgument arg, QueryArgument binding)
 	{
-		bindingMap.put(arg, binding);
+		int slot = table.slot(arg);
+		if(slot < 0) {
+			if(!ownsTable) {
+				table = table.copy();
+				ownsTable = true;
+			}
+			slot = table.add(arg);
+		}
+		set(slot, binding);
+	}
+	
+	/**
+	 * Set the binding of a slot.
+	 * Already specified bindings will be overwritten.
+	 * 
+	 * @param slot
+	 * @param binding
+	 */
+	public void set(int slot, QueryArgument binding)
+	{
+		if(slot >= values.length) {
+			values = Arrays.copyOf(values, Math.max(table.size(), slot + 1));
+		}
+		if(values[slot] == null) {
+			size++;
+		}
+		values[slot] = binding;
 	}
 	
 	/**
@@ -59,7 +154,9 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public void set(Map<QueryArgument, QueryArgument> bindings)
 	{
-		bindingMap.putAll(bindings);
+		for(Map.Entry<QueryArgument, QueryArgument> entry : bindings.entrySet()) {
+			set(entry.getKey(), entry.getValue());
+		}
 	}
 	
 	/**
@@ -69,7 +166,20 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public void set(QueryBindingImpl b)
 	{
-		bindingMap.putAll(b.bindingMap);
+		if(b.table == table) {
+			for(int i = 0; i < b.values.length; i++) {
+				if(b.values[i] != null) {
+					set(i, b.values[i]);
+				}
+			}
+		}
+		else {
+			for(int i = 0; i < b.values.length; i++) {
+				if(b.values[i] != null) {
+					set(b.table.get(i), b.values[i]);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -79,7 +189,47 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public Set<QueryArgument> getBoundArgs()
 	{
-		return bindingMap.keySet();
+		return new AbstractSet<QueryArgument>() {
+			public Iterator<QueryArgument> iterator()
+			{
+				return new Iterator<QueryArgument>() {
+					private int slot = advance(0);
+					
+					private int advance(int i)
+					{
+						while(i < values.length && values[i] == null) {
+							i++;
+						}
+						return i;
+					}
+					
+					public boolean hasNext()
+					{
+						return slot < values.length;
+					}
+					
+					public QueryArgument next()
+					{
+						if(!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						QueryArgument arg = table.get(slot);
+						slot = advance(slot + 1);
+						return arg;
+					}
+				};
+			}
+			
+			public boolean contains(Object o)
+			{
+				return o instanceof QueryArgument && isBound((QueryArgument)o);
+			}
+			
+			public int size()
+			{
+				return size;
+			}
+		};
 	}
 	
 	/**
@@ -90,7 +240,7 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public boolean isBound(QueryArgument arg)
 	{
-		return bindingMap.containsKey(arg);
+		return get(arg) != null;
 	}
 	
 	/**
@@ -100,7 +250,7 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public int size()
 	{
-		return bindingMap.size();
+		return size;
 	}
 	
 	/**
@@ -110,7 +260,7 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public boolean isEmpty()
 	{
-		return bindingMap.isEmpty();
+		return size == 0;
 	}
 	
 	/**
@@ -122,7 +272,7 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public QueryBindingImpl clone()
 	{
-		return new QueryBindingImpl(bindingMap);
+		return new QueryBindingImpl(this);
 	}
 	
 	/**
@@ -135,10 +285,11 @@ public class QueryBindingImpl implements QueryBinding
 	 */
 	public QueryBindingImpl cloneAndFilter(Set<QueryArgument> args)
 	{
-		QueryBindingImpl binding = new QueryBindingImpl();
-		for(QueryArgument arg : getBoundArgs()) {
-			if(args.contains(arg)) {
-				binding.set(arg, bindingMap.get(arg));
+		QueryBindingImpl binding = new QueryBindingImpl(shareTable());
+		binding.ownsTable = binding.table != table;
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] != null && args.contains(table.get(i))) {
+				binding.set(i, values[i]);
 			}
 		}
 		return binding;
@@ -147,13 +298,31 @@ public class QueryBindingImpl implements QueryBinding
 	@Override
 	public boolean equals(Object obj)
 	{
-		QueryBindingImpl arg = (QueryBindingImpl)obj;
-		return bindingMap.equals(arg.bindingMap);
+		if(!(obj instanceof QueryBindingImpl)) {
+			return false;
+		}
+		QueryBindingImpl binding = (QueryBindingImpl)obj;
+		if(size != binding.size) {
+			return false;
+		}
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] != null && !values[i].equals(binding.get(table.get(i)))) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	@Override
 	public int hashCode()
 	{
-		return bindingMap.hashCode();
+		// same as the hash code of the equivalent map
+		int hash = 0;
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] != null) {
+				hash += table.get(i).hashCode() ^ values[i].hashCode();
+			}
+		}
+		return hash;
 	}
 }
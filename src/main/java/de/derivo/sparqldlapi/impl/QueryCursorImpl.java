@@ -0,0 +1,190 @@
+package de.derivo.sparqldlapi.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.jdom.Document;
+
+import de.derivo.sparqldlapi.Query;
+import de.derivo.sparqldlapi.QueryBinding;
+import de.derivo.sparqldlapi.QueryBindingIterator;
+import de.derivo.sparqldlapi.QueryCursor;
+import de.derivo.sparqldlapi.QueryResult;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+import de.derivo.sparqldlapi.exceptions.UncheckedQueryEngineException;
+
+/**
+ * Concrete implementation of the QueryCursor interface.
+ * The solutions are pulled from a QueryBindingIterator of the engine.  If the cursor is
+ * materialized the remaining solutions are collected in a QueryResultImpl.
+ */
+public class QueryCursorImpl implements QueryCursor
+{
+	private final Query query;
+	private final QueryBindingIterator solutions;
+	private QueryResult result;
+	private boolean streamed;
+	private boolean consumed;
+
+	public QueryCursorImpl(Query query, QueryBindingIterator solutions)
+	{
+		this.query = query;
+		this.solutions = solutions;
+	}
+
+	/**
+	 * Create a cursor over an already computed result.
+	 *
+	 * @param result
+	 */
+	public QueryCursorImpl(QueryResult result)
+	{
+		this.query = result.getQuery();
+		this.solutions = null;
+		this.result = result;
+	}
+
+	public Query getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * An iterator over the remaining solutions.
+	 *
+	 * @return
+	 */
+	public Iterator<QueryBinding> iterator()
+	{
+		if(result != null) {
+			return result.iterator();
+		}
+		streamed = true;
+		return new Iterator<QueryBinding>() {
+			public boolean hasNext()
+			{
+				try {
+					return solutions.hasNext();
+				}
+				catch(QueryEngineException e) {
+					throw new UncheckedQueryEngineException(e);
+				}
+			}
+
+			public QueryBinding next()
+			{
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				try {
+					QueryBinding binding = solutions.next();
+					consumed = true;
+					return binding;
+				}
+				catch(QueryEngineException e) {
+					throw new UncheckedQueryEngineException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A sequential stream over the remaining solutions.
+	 * Closing the stream closes the cursor.
+	 *
+	 * @return
+	 */
+	public Stream<QueryBinding> stream()
+	{
+		Spliterator<QueryBinding> spliterator = Spliterators.spliteratorUnknownSize(iterator(),
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(this::close);
+	}
+
+	public QueryBinding get(int index)
+	{
+		return materialize().get(index);
+	}
+
+	public int size()
+	{
+		return materialize().size();
+	}
+
+	public boolean isEmpty()
+	{
+		return materialize().isEmpty();
+	}
+
+	/**
+	 * Ask if the query had a solution.
+	 * If no solution has been consumed yet, the query is evaluated up to its first solution.
+	 *
+	 * @return True if the query had a solution.
+	 */
+	public boolean ask()
+	{
+		if(result != null) {
+			return result.ask();
+		}
+		try {
+			// if a solution has been streamed already the query obviously had one
+			return consumed || solutions.hasNext();
+		}
+		catch(QueryEngineException e) {
+			throw new UncheckedQueryEngineException(e);
+		}
+	}
+
+	public Document toXML()
+	{
+		return materialize().toXML();
+	}
+
+	public String toJSON()
+	{
+		return materialize().toJSON();
+	}
+
+	public void close()
+	{
+		if(solutions != null) {
+			solutions.close();
+		}
+	}
+
+	public String toString()
+	{
+		return materialize().toString();
+	}
+
+	private QueryResult materialize()
+	{
+		if(result == null) {
+			if(streamed) {
+				throw new IllegalStateException("The solutions of the cursor have already been streamed.");
+			}
+			QueryResultImpl r = new QueryResultImpl(query);
+			boolean ask = false;
+			try {
+				while(solutions.hasNext()) {
+					ask = true;
+					r.add((QueryBindingImpl) solutions.next());
+				}
+			}
+			catch(QueryEngineException e) {
+				throw new UncheckedQueryEngineException(e);
+			}
+			finally {
+				solutions.close();
+			}
+			r.setAsk(ask);
+			result = r;
+		}
+		return result;
+	}
+}
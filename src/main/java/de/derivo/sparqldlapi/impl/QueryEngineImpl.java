@@ -4,12 +4,16 @@
 
 package de.derivo.sparqldlapi.impl;
 
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Iterators;
 import de.derivo.sparqldlapi.*;
 import de.derivo.sparqldlapi.exceptions.QueryEngineException;
 import de.derivo.sparqldlapi.types.QueryArgumentType;
+import de.derivo.sparqldlapi.types.QueryAtomType;
 import jpaul.DataStructs.UnionFind;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
@@ -20,46 +24,120 @@ import org.semanticweb.owlapi.search.EntitySearcher;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 import static de.derivo.sparqldlapi.QueryArgument.newLiteral;
 import static de.derivo.sparqldlapi.QueryArgument.newURI;
-import static de.derivo.sparqldlapi.types.QueryType.SELECT_DISTINCT;
-import static java.util.stream.Collectors.toSet;
 
 /**
  * A concrete implementation of the query engine interface utilizing the OWL-API.
+ * <p>
+ * The engine can execute many queries at once.  Every execution has its own operator tree and bindings,
+ * and the indexes of the engine load the entries of different classes and properties independently.
+ * The calls to the reasoner are coordinated by the {@link CachingReasoner} of the engine, which locks them per
+ * result, so concurrent queries only wait for each other when they need the same missing result.  A reasoner
+ * that cannot answer several calls at once has to be passed wrapped in a {@link CachingReasoner} with a
+ * concurrency of 1.  The ontology must not be changed while queries are executed, unless it is managed by a
+ * concurrent ontology manager.
  *
  * @author Mario Volke
  */
 public class QueryEngineImpl extends QueryEngine {
 
+    private final OWLOntologyManager manager;
 
-    private enum BoundChecking {
-        CHECK_BOUND,
-        DO_NOT_CHECK_BOUND
-    }
+    private final OWLReasoner reasoner;
 
-    private final OWLOntologyManager manager;
+    private final CachingReasoner cachingReasoner;
+
+    /**
+     * Whether the caching reasoner has been created by the engine (and not passed in by the caller).
+     */
+    private final boolean ownsCachingReasoner;
+
+    private volatile ClassHierarchyIndex classHierarchy;
+
+    /**
+     * Guards taking a snapshot of the class hierarchy, so concurrent queries wait for a single snapshot.
+     */
+    private final Object classHierarchyLock = new Object();
+
+    private volatile PropertyCharacteristics propertyCharacteristics;
+
+    private volatile InstanceIndex instanceIndex;
 
-    private OWLReasoner reasoner;
+    private final PropertyValueIndex propertyValueIndex;
 
-    private OWLDataFactory factory;
+    private final OWLDataFactory factory;
 
-    private boolean strictMode;
+    private volatile boolean strictMode;
 
-    private boolean performArgumentChecking = true;
+    private volatile boolean performArgumentChecking = true;
 
-    private Set<OWLAnnotationProperty> cachedAnnotationProperties = new HashSet<>();
+    private volatile int batchSize;
 
-    private Set<OWLAnnotationAssertionAxiom> unannotatedAxioms = new HashSet<>();
+    private volatile boolean adaptiveOrdering;
 
-    private Multimap<IRI, OWLAnnotationAssertionAxiom> annotationAssertionsBySubject = ArrayListMultimap.create();
+    private volatile ForkJoinPool forkJoinPool;
 
-    private ImmutableSet<IRI> classIris;
+    private volatile Executor executor;
 
-    private ImmutableSet<OWLClass> classes;
+    private final OntologyStatistics statistics;
+
+    private final CostModel costModel;
+
+    /**
+     * The default number of compiled plans that are cached.
+     */
+    public static final int DEFAULT_PLAN_CACHE_SIZE = 512;
+
+    /**
+     * The share of the axioms the statistics are collected from that may change before a cached plan is
+     * compiled again.
+     */
+    private static final double PLAN_DRIFT = 0.1;
+
+    private volatile Cache<String, QueryPlan> planCache = newPlanCache(DEFAULT_PLAN_CACHE_SIZE);
+
+    /**
+     * The default number of ground atoms whose entailment is cached.
+     */
+    public static final int DEFAULT_ENTAILMENT_CACHE_SIZE = 10000;
 
-    private ImmutableSet<IRI> annotationPropertyIris;
+    private volatile Cache<List<Object>, Boolean> entailmentCache = newEntailmentCache(DEFAULT_ENTAILMENT_CACHE_SIZE);
+
+    private volatile long entailmentCacheVersion;
+
+    private final SignatureChangeListener signatureListener;
+
+    private final ImmutableSet<OWLAnnotationAssertionAxiom> unannotatedAxioms;
+
+    private final ImmutableListMultimap<IRI, OWLAnnotationAssertionAxiom> annotationAssertionsBySubject;
+
+    /**
+     * The unannotated annotation assertions by property, by value and by property and value.  The lists keep
+     * the iteration order of {@link #unannotatedAxioms}, so a lookup yields the same solutions in the same
+     * order as a scan.
+     */
+    private final ImmutableListMultimap<IRI, OWLAnnotationAssertionAxiom> annotationAssertionsByProperty;
+
+    private final ImmutableListMultimap<OWLAnnotationValue, OWLAnnotationAssertionAxiom> annotationAssertionsByValue;
+
+    private final ImmutableListMultimap<List<Object>, OWLAnnotationAssertionAxiom> annotationAssertionsByPropertyAndValue;
+
+    /**
+     * The full-text index over the literals of {@link #unannotatedAxioms}, null until the first TextMatch atom
+     * is evaluated.
+     */
+    private volatile AnnotationTextIndex textIndex;
+
+    /**
+     * The signature of the ontology, null if the imports closure has changed since it has been copied.
+     */
+    private volatile SignatureSnapshot signature;
 
     public QueryEngineImpl(OWLOntologyManager manager, OWLReasoner reasoner) {
         this(manager, reasoner, false);
@@ -69,34 +147,124 @@ public class QueryEngineImpl extends QueryEngine {
      * QueryEngineImpl constructor
      *
      * @param manager    An OWLOntologyManager instance of OWLAPI v3
-     * @param reasoner   An OWLReasoner instance.
+     * @param reasoner   An OWLReasoner instance.  Unless it is a {@link CachingReasoner} already, it is wrapped
+     *                   in one, so repeated hierarchy and instance lookups are not passed to the reasoner.
      * @param strictMode If strict mode is enabled the query engine will throw a QueryEngineException if data types withing the query are not correct (e.g. Class(URI_OF_AN_INDIVIDUAL))
      */
     public QueryEngineImpl(OWLOntologyManager manager, OWLReasoner reasoner, boolean strictMode) {
         this.manager = manager;
-        this.reasoner = reasoner;
+        this.ownsCachingReasoner = !(reasoner instanceof CachingReasoner);
+        this.cachingReasoner = ownsCachingReasoner ? new CachingReasoner(reasoner) : (CachingReasoner) reasoner;
+        this.reasoner = cachingReasoner;
         this.factory = manager.getOWLDataFactory();
         this.strictMode = strictMode;
+        Set<OWLAnnotationAssertionAxiom> axioms = new HashSet<>();
+        ImmutableListMultimap.Builder<IRI, OWLAnnotationAssertionAxiom> bySubject = ImmutableListMultimap.builder();
         reasoner.getRootOntology()
                 .getAxioms(AxiomType.ANNOTATION_ASSERTION, Imports.INCLUDED)
                 .stream()
                 .filter(ax -> ax.getSubject() instanceof IRI)
                 .forEach(ax -> {
-                    unannotatedAxioms.add(ax.getAxiomWithoutAnnotations());
-                    annotationAssertionsBySubject.put((IRI) ax.getSubject(), ax);
+                    axioms.add(ax.getAxiomWithoutAnnotations());
+                    bySubject.put((IRI) ax.getSubject(), ax);
                 });
-        Set<OWLClass> classesInSignature = reasoner.getRootOntology().getClassesInSignature(Imports.INCLUDED);
-        classesInSignature.add(factory.getOWLThing());
-        classesInSignature.add(factory.getOWLNothing());
-        classes = ImmutableSet.copyOf(classesInSignature);
-        classIris = ImmutableSet.copyOf(classes.stream().map(OWLClass::getIRI).collect(toSet()));
+        unannotatedAxioms = ImmutableSet.copyOf(axioms);
+        annotationAssertionsBySubject = bySubject.build();
+        ImmutableListMultimap.Builder<IRI, OWLAnnotationAssertionAxiom> byProperty = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<OWLAnnotationValue, OWLAnnotationAssertionAxiom> byValue = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<List<Object>, OWLAnnotationAssertionAxiom> byPropertyAndValue = ImmutableListMultimap.builder();
+        for (OWLAnnotationAssertionAxiom ax : unannotatedAxioms) {
+            IRI property = ax.getProperty().getIRI();
+            byProperty.put(property, ax);
+            byValue.put(ax.getValue(), ax);
+            byPropertyAndValue.put(Arrays.asList(property, ax.getValue()), ax);
+        }
+        annotationAssertionsByProperty = byProperty.build();
+        annotationAssertionsByValue = byValue.build();
+        annotationAssertionsByPropertyAndValue = byPropertyAndValue.build();
+        signature = new SignatureSnapshot(reasoner.getRootOntology(), factory);
+
+        statistics = new OntologyStatistics(reasoner.getRootOntology(), this::getSignature);
+        costModel = new CostModel(statistics);
+        reasoner.getRootOntology().getOWLOntologyManager().addOntologyChangeListener(statistics);
+        propertyValueIndex = new PropertyValueIndex(cachingReasoner, this::getIndividuals);
+        reasoner.getRootOntology().getOWLOntologyManager().addOntologyChangeListener(propertyValueIndex);
+        signatureListener = new SignatureChangeListener(reasoner.getRootOntology(), this::entitiesChanged,
+                                                        this::signatureChanged);
+        signatureListener.register();
+    }
 
-        annotationPropertyIris = ImmutableSet.copyOf(reasoner.getRootOntology().getAnnotationPropertiesInSignature(Imports.INCLUDED).stream().map(
-                OWLNamedObject::getIRI).collect(toSet()));
+    /**
+     * Stops listening to the changes of the ontology and detaches the caching reasoner the engine has created.
+     * The engine must not be used afterwards.
+     */
+    public void dispose() {
+        reasoner.getRootOntology().getOWLOntologyManager().removeOntologyChangeListener(statistics);
+        reasoner.getRootOntology().getOWLOntologyManager().removeOntologyChangeListener(propertyValueIndex);
+        signatureListener.unregister();
+        if (ownsCachingReasoner) {
+            cachingReasoner.detach();
+        }
+    }
+
+    /**
+     * Get the reasoner that memoizes the lookups of the engine, e.g. to look at its hit and miss counts.
+     */
+    public CachingReasoner getCachingReasoner() {
+        return cachingReasoner;
     }
 
     public void setStrictMode(boolean strict) {
         this.strictMode = strict;
+        clearPlanCache();
+    }
+
+    /**
+     * Sets the number of compiled plans that are cached.  Queries are compiled (split into components,
+     * atoms ordered, joins chosen) once and the plan is reused for every equal query, which are queries
+     * that only differ in whitespace or prefixes.  The cache is cleared when the signature of the ontology
+     * changes, and a cached plan is compiled again once more than a tenth of the axioms the statistics are
+     * collected from have changed since, so the order of the atoms and the joins follow the statistics.
+     *
+     * @param size The maximum number of cached plans, 0 to disable the cache.
+     */
+    public void setPlanCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The plan cache size must not be negative.");
+        }
+        planCache = size == 0 ? null : newPlanCache(size);
+    }
+
+    /**
+     * Removes all compiled plans from the plan cache.
+     */
+    public void clearPlanCache() {
+        Cache<String, QueryPlan> cache = planCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static Cache<String, QueryPlan> newPlanCache(int size) {
+        return CacheBuilder.newBuilder().maximumSize(size).build();
+    }
+
+    /**
+     * Sets the number of ground atoms whose entailment is cached, positive and negative results alike.
+     * The cache is cleared whenever the results of the reasoner change and bypassed while the reasoner
+     * has pending changes.
+     *
+     * @param size The maximum number of cached ground atoms, 0 to disable the cache.
+     */
+    public void setEntailmentCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The entailment cache size must not be negative.");
+        }
+        entailmentCache = size == 0 ? null : newEntailmentCache(size);
+    }
+
+    private static Cache<List<Object>, Boolean> newEntailmentCache(int size) {
+        return CacheBuilder.newBuilder().maximumSize(size).build();
     }
 
     /**
@@ -106,70 +274,430 @@ public class QueryEngineImpl extends QueryEngine {
         this.performArgumentChecking = performArgumentChecking;
     }
 
+    /**
+     * Enables the batch evaluation of atoms.  Every atom that follows the first atom of a component pulls blocks of
+     * up to batchSize solutions of the previous atoms and evaluates itself only once for every distinct combination
+     * of its arguments within a block.  This pays off if many solutions share the values of the variables of an atom,
+     * but solutions are computed a block ahead, so queries that are only partially consumed may do more work.
+     *
+     * @param batchSize The number of solutions per block, 0 or 1 to evaluate one solution at a time (the default).
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("The batch size must not be negative.");
+        }
+        this.batchSize = batchSize;
+        clearPlanCache();
+    }
+
+    /**
+     * Sets whether {@code PropertyValue} atoms with an object property find the values the reasoner infers
+     * (e.g. from a sub property or an inverse), enabled by default.  Atoms with an unbound subject are driven
+     * from lists of the values of the property, which then hold the values the reasoner infers for every
+     * individual, so they cost one reasoner call per individual whenever the ontology has changed.  With
+     * inference disabled, all {@code PropertyValue} atoms with an object property are answered from the
+     * asserted values only, which are maintained as the ontology changes and never involve the reasoner.
+     */
+    public void setPropertyValueInference(boolean inference) {
+        propertyValueIndex.setInference(inference);
+        // the cached entailments of PropertyValue atoms depend on the setting
+        Cache<List<Object>, Boolean> cache = entailmentCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Enables the adaptive ordering of atoms.  Instead of evaluating the atoms of a component in an order that
+     * is fixed before the evaluation, the next atom is chosen for every partial solution with the values it
+     * actually binds.  This avoids bad orders if the number of solutions of an atom strongly depends on the
+     * values of its variables, at the price of estimating the remaining atoms for every partial solution.
+     * Batch evaluation and hash joins are not used in this mode.
+     */
+    public void setAdaptiveOrdering(boolean adaptiveOrdering) {
+        this.adaptiveOrdering = adaptiveOrdering;
+        clearPlanCache();
+    }
+
+    /**
+     * Enables the parallel evaluation of components.  The solutions of the first atom of a component are
+     * split into chunks and the remaining atoms are evaluated for the chunks concurrently, as fork-join tasks
+     * of the given pool.  The solutions come in the same order as with sequential evaluation, but every
+     * component is evaluated completely before its first solution is returned, so queries that are only
+     * partially consumed (ASK, LIMIT, streaming) may do more work.  Not used in adaptive mode.
+     *
+     * @param pool The pool the tasks run in, e.g. {@link ForkJoinPool#commonPool()}, or null to evaluate
+     *             sequentially (the default).
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.forkJoinPool = pool;
+        clearPlanCache();
+    }
+
+    /**
+     * Enables the concurrent evaluation of the groups of a query (OR WHERE) and of the independent components
+     * of every group.  They are evaluated as tasks of the given executor and combined in the same order as with
+     * sequential evaluation.  As soon as a component has no solutions, the evaluation of the other components
+     * of its group is stopped at their next candidate solution.  Groups and components are evaluated
+     * completely, so queries that are only partially consumed may do more work.  The tasks never wait for each
+     * other, so any number of threads is enough, but the thread that executes the query waits for the tasks, so
+     * with a bounded number of threads, the executor should not be the one the queries themselves are executed on.
+     *
+     * @param executor The executor the tasks run on or null to evaluate sequentially (the default).
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     /**
      * Execute a sparql-dl query and generate the result set.
      *
      * @return The query result set.
      */
     public QueryResult execute(Query query) throws QueryEngineException {
-        if (!(query instanceof QueryImpl)) {
-            throw new QueryEngineException("Couldn't cast Query to QueryImpl.");
+        return execute(asQueryImpl(query), new Cancellation());
+    }
+
+    private QueryResult execute(QueryImpl q, Cancellation cancellation) throws QueryEngineException {
+        if (q.isAsk()) {
+            return executeAsk(q, cancellation);
         }
-        QueryImpl q = (QueryImpl) query;
+        QueryResultImpl result = new QueryResultImpl(q);
+        boolean ask = false;
+        QueryOperator plan = buildPlan(q, cancellation);
+        plan.open();
+        try {
+            QueryBindingImpl binding;
+            while ((binding = plan.next()) != null) {
+                ask = true;
+                if (q.isSelect() || q.isSelectDistinct()) {
+                    result.add(binding);
+                }
+            }
+        } finally {
+            plan.close();
+        }
+        result.setAsk(ask);
+        return result;
+    }
 
+    /**
+     * Execute an ASK query.  Only a single solution is pulled from the operator tree, so the evaluation
+     * (including any pending reasoner calls of the candidate iterators) stops at the first witness.
+     * Groups of the query are tried one after another until one of them has a solution.
+     *
+     * @return A result without bindings that only answers whether the query has a solution.
+     */
+    private QueryResultImpl executeAsk(QueryImpl query, Cancellation cancellation) throws QueryEngineException {
+        QueryResultImpl result = new QueryResultImpl(query);
+        QueryOperator plan = buildPlan(query, cancellation);
+        plan.open();
+        try {
+            result.setAsk(plan.next() != null);
+        } finally {
+            plan.close();
+        }
+        return result;
+    }
 
-        // search for unbound results vars
-        resvarsLoop:
-        for (QueryArgument arg : q.getResultVars()) {
-            for (QueryAtomGroup g : q.getAtomGroups()) {
-                for (QueryAtom a : g.getAtoms()) {
-                    if (a.getArguments().contains(arg)) {
-                        continue resvarsLoop;
+    /**
+     * Execute a sparql-dl query lazily.  The operator tree of the query is only opened when the
+     * first solution is requested.
+     *
+     * @return An iterator over the solutions of the query.
+     */
+    public QueryBindingIterator iterate(Query query) throws QueryEngineException {
+        return iterate(asQueryImpl(query), new Cancellation());
+    }
+
+    private QueryBindingIterator iterate(QueryImpl query, Cancellation cancellation) {
+        QueryOperator plan = buildPlan(query, cancellation);
+        return new QueryBindingIterator() {
+
+            private boolean opened = false;
+
+            private boolean closed = false;
+
+            private QueryBindingImpl next = null;
+
+            @Override
+            public boolean hasNext() throws QueryEngineException {
+                if (closed) {
+                    return false;
+                }
+                if (next == null) {
+                    if (!opened) {
+                        opened = true;
+                        plan.open();
+                    }
+                    next = plan.next();
+                    if (next == null) {
+                        close();
                     }
                 }
+                return next != null;
             }
-//			throw new QueryEngineException("Query contains an unbound result argument " + arg + ".");
-        }
 
-        Queue<QueryResultImpl> results = new LinkedList<>();
-        for (QueryAtomGroup g : q.getAtomGroups()) {
+            @Override
+            public QueryBinding next() throws QueryEngineException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                QueryBindingImpl binding = next;
+                next = null;
+                return binding;
+            }
 
-            QueryAtomGroupImpl group = (QueryAtomGroupImpl) g;
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    next = null;
+                    if (opened) {
+                        plan.close();
+                    }
+                }
+            }
+        };
+    }
 
-            List<QueryAtomGroupImpl> components = findComponents(group);
-            Queue<QueryResultImpl> componentResults = new LinkedList<>();
-            boolean groupAsk = true;
-            for (QueryAtomGroupImpl component : components) {
+    /**
+     * Execute a sparql-dl query and stream the result set.  The solutions are computed while they are
+     * consumed from the cursor, so the result set is never held in memory as a whole.
+     *
+     * @return A cursor over the result set.
+     */
+    public QueryCursor executeStreaming(Query query) throws QueryEngineException {
+        QueryImpl q = asQueryImpl(query);
+        if (q.isAsk()) {
+            // the result of an ASK query has no bindings anyway
+            return new QueryCursorImpl(executeAsk(q, new Cancellation()));
+        }
+        return new QueryCursorImpl(query, iterate(q, new Cancellation()));
+    }
 
-                QueryAtomGroupImpl preorderedGroup = preorder(component);
+    /**
+     * Execute a sparql-dl query asynchronously on an executor.  Cancelling the returned future stops the
+     * evaluation at the next candidate solution, also in the tasks of the executor and the fork-join pool of
+     * the engine.
+     *
+     * @return A future of the query result set.
+     */
+    public CompletableFuture<QueryResult> executeAsync(Query query, Executor executor) {
+        QueryFuture<QueryResult> future = new QueryFuture<>(f -> execute(asQueryImpl(query), f.getCancellation()));
+        executor.execute(future);
+        return future;
+    }
 
-                QueryResultImpl result = new QueryResultImpl(query);
-                if (eval(q, preorderedGroup, result, new QueryBindingImpl(), BoundChecking.CHECK_BOUND)) {
-                    if (query.isSelectDistinct()) {
-                        result = eliminateDuplicates(result);
+    /**
+     * Execute a sparql-dl query asynchronously on an executor and pass every solution to a callback as soon as
+     * it is computed.  The solutions are computed while they are passed to the callback, like with
+     * {@link #iterate(Query)}.  Cancelling the returned future stops the evaluation at the next candidate
+     * solution.  It waits for a callback that is running, and no solutions are passed to the callback afterwards.
+     *
+     * @return A future that completes with whether the query has a solution, after all solutions have been
+     * passed to the callback.
+     */
+    public CompletableFuture<Boolean> executeAsync(Query query, Executor executor, Consumer<QueryBinding> callback) {
+        QueryFuture<Boolean> future = new QueryFuture<>(f -> {
+            QueryImpl q = asQueryImpl(query);
+            if (q.isAsk()) {
+                return executeAsk(q, f.getCancellation()).ask();
+            }
+            QueryBindingIterator it = iterate(q, f.getCancellation());
+            try {
+                boolean ask = false;
+                while (it.hasNext()) {
+                    ask = true;
+                    // a solution that has been computed before the future has been cancelled is dropped
+                    if (!f.deliver(callback, it.next())) {
+                        break;
                     }
+                }
+                return ask;
+            } finally {
+                it.close();
+            }
+        });
+        executor.execute(future);
+        return future;
+    }
+
+    private QueryImpl asQueryImpl(Query query) throws QueryEngineException {
+        if (!(query instanceof QueryImpl)) {
+            throw new QueryEngineException("Couldn't cast Query to QueryImpl.");
+        }
+        return (QueryImpl) query;
+    }
+
+    /**
+     * Build the operator tree for a query.  The compiled plan of the query is taken from the plan cache
+     * if an equal query has been compiled before.
+     *
+     * @param cancellation The token that stops the evaluation.
+     * @return The root of the operator tree.
+     */
+    private QueryOperator buildPlan(QueryImpl query, Cancellation cancellation) {
+        Cache<String, QueryPlan> cache = planCache;
+        if (cache == null) {
+            return compile(query).instantiate(executor, cancellation);
+        }
+        String key = QueryPlan.key(query);
+        QueryPlan plan = cache.getIfPresent(key);
+        if (plan == null || plan.isStale(statistics.changes(), PLAN_DRIFT)) {
+            plan = compile(query);
+            cache.put(key, plan);
+        }
+        return plan.instantiate(executor, cancellation);
+    }
+
+    /**
+     * Compile a query.  Every group is split into its connected components and the atoms of every
+     * component are ordered.
+     */
+    private QueryPlan compile(QueryImpl query) {
+        // the plan must not change if slots are added to the table of the query later on
+        VarTable vars = query.getVarTable().copy();
+        Set<QueryArgument> resultVars = query.isAsk() ? null : new LinkedHashSet<>(query.getResultVars());
+        QueryPlan plan = new QueryPlan(vars, resultVars, query.isSelectDistinct(), query.getOffset(),
+                                       query.getLimit());
+        plan.setStatistics(statistics.changes(), statistics.size());
+        for (QueryAtomGroup g : query.getAtomGroups()) {
+            QueryAtomGroupImpl group = (QueryAtomGroupImpl) g;
+            List<QueryPlan.Component> components = new ArrayList<>();
+            for (QueryAtomGroupImpl component : findComponents(group)) {
+                components.add(compileComponent(vars, preorder(component)));
+            }
+            plan.addGroup(components);
+        }
+        return plan;
+    }
 
-                    componentResults.add(result);
+    /**
+     * Compile the (ordered) atoms of a component into a chain of operators.  Every atom is joined
+     * with the solutions of the atoms before it, either by a bind join that evaluates the atom for every
+     * solution with the variables of the solution plugged in, or by a hash join that evaluates the atom
+     * only once on its own.  In adaptive mode the atoms are evaluated by a single operator that chooses
+     * their order at runtime.
+     */
+    private QueryPlan.Component compileComponent(VarTable vars, QueryAtomGroupImpl component) {
+        QueryPlan.Component plan = new QueryPlan.Component();
+        if (adaptiveOrdering) {
+            List<AtomTemplate> templates = new ArrayList<>();
+            for (QueryAtom atom : component.getAtoms()) {
+                templates.add(new AtomTemplate(atom, vars));
+            }
+            plan.addStep((input, cancellation) -> new AdaptiveOperator(this, input, templates, costModel,
+                                                                    cancellation));
+            return plan;
+        }
+        Map<QueryArgument, List<QueryAtom>> conjunctions = findTypeConjunctions(component);
+        Set<QueryArgument> bound = new HashSet<>();
+        double solutions = 1;
+        boolean first = true;
+        for (QueryAtom atom : component.getAtoms()) {
+            AtomTemplate template = new AtomTemplate(atom, vars);
+            List<QueryAtom> conjunction = conjunctions.get(atom.getArguments().get(0));
+            if (conjunction != null && conjunction.contains(atom)) {
+                // all atoms of the conjunction are evaluated together at the position of the first one
+                if (conjunction.get(0) == atom) {
+                    List<AtomTemplate> templates = new ArrayList<>();
+                    for (QueryAtom a : conjunction) {
+                        templates.add(new AtomTemplate(a, vars));
+                    }
+                    plan.addStep((input, cancellation) -> new InstanceIntersectionOperator(this, input, templates,
+                                                                                      cancellation));
                 }
-                else {
-                    groupAsk = false;
-                    break;
+            }
+            else if (!first && useHashJoin(atom, bound, solutions)) {
+                List<QueryArgument> args = atom.getArguments();
+                int[] positions = new int[args.size()];
+                int n = 0;
+                for (int i = 0; i < args.size(); i++) {
+                    if (bound.contains(args.get(i))) {
+                        positions[n++] = i;
+                    }
                 }
+                int[] joinPositions = Arrays.copyOf(positions, n);
+                plan.addStep((input, cancellation) -> {
+                    QueryOperator atomPlan = new AtomOperator(this, new SingletonOperator(new QueryBindingImpl(vars)),
+                                                              template, cancellation);
+                    return new HashJoinOperator(input, atomPlan, template, joinPositions);
+                });
             }
-
-            if (groupAsk) {
-                results.add(combineResults(componentResults,
-                                           query.getType() == SELECT_DISTINCT));
+            // the first atom of a component only has a single input solution, there is nothing to batch
+            else if (batchSize > 1 && !first) {
+                int size = batchSize;
+                plan.addStep((input, cancellation) -> new BatchAtomOperator(this, input, template, size,
+                                                                               cancellation));
             }
             else {
-                // return only empty result with no solution for this group
-                QueryResultImpl ret = new QueryResultImpl(query);
-                ret.setAsk(false);
-                results.add(ret);
+                plan.addStep((input, cancellation) -> new AtomOperator(this, input, template, cancellation));
             }
+            solutions *= costModel.estimate(atom, bound);
+            CostModel.bind(atom, bound);
+            first = false;
         }
+        ForkJoinPool pool = forkJoinPool;
+        if (pool != null) {
+            plan.parallelize(pool);
+        }
+        return plan;
+    }
 
-        return unionResults(q, results, query.getType() == SELECT_DISTINCT);
+    /**
+     * Decides whether an atom is joined with the atoms before it by a hash join.  A hash join enumerates
+     * all solutions of the atom, so it is only used for atoms that can be enumerated by a single lookup
+     * (instances of a class, assertions of an annotation property) and only if enumerating them is cheaper
+     * than evaluating the bound atom for each of the expected solutions of the atoms before it.  In strict
+     * mode bind joins are used, so every bound atom is checked.
+     *
+     * @param bound     The variables bound by the atoms before the atom.
+     * @param solutions The expected number of solutions of the atoms before the atom.
+     */
+    private boolean useHashJoin(QueryAtom atom, Set<QueryArgument> bound, double solutions) {
+        if (strictMode || !isEnumerable(atom)) {
+            return false;
+        }
+        double enumerated = costModel.estimate(atom, Collections.emptySet());
+        return enumerated <= solutions * CostModel.BIND_JOIN_PROBE_COST;
+    }
+
+    /**
+     * Find the conjunctions of at least two Type or DirectType atoms of a component that have the same
+     * variable as individual and constant classes.  In strict mode the atoms are evaluated one by one, so
+     * every atom is checked.
+     *
+     * @return The atoms of the conjunctions by their variable.
+     */
+    private Map<QueryArgument, List<QueryAtom>> findTypeConjunctions(QueryAtomGroupImpl component) {
+        Map<QueryArgument, List<QueryAtom>> conjunctions = new HashMap<>();
+        if (strictMode) {
+            return conjunctions;
+        }
+        for (QueryAtom atom : component.getAtoms()) {
+            boolean isType = atom.getType() == QueryAtomType.TYPE || atom.getType() == QueryAtomType.DIRECT_TYPE;
+            if (isType && isEnumerable(atom)) {
+                conjunctions.computeIfAbsent(atom.getArguments().get(0), v -> new ArrayList<>()).add(atom);
+            }
+        }
+        conjunctions.values().removeIf(atoms -> atoms.size() < 2);
+        return conjunctions;
+    }
+
+    private boolean isEnumerable(QueryAtom atom) {
+        List<QueryArgument> args = atom.getArguments();
+        switch (atom.getType()) {
+            case TYPE:
+            case DIRECT_TYPE:
+                return args.get(0).isVar() && args.get(1).isURI();
+            case ANNOTATION:
+                return args.get(1).isURI();
+            case TEXT_MATCH:
+                return args.get(2).isLiteral();
+            default:
+                return false;
+        }
     }
 
     /**
@@ -266,223 +794,108 @@ public class QueryEngineImpl extends QueryEngine {
     }
 
     /**
-     * Combine the results of the individual components with the cartesian product.
+     * Determines if the arguments of the specified atom are well formed.  In strict mode a malformed atom is
+     * reported as an exception, otherwise the atom simply has no solutions.
      *
-     * @return the combined result
+     * @param atom    The atom to check.
+     * @param binding The binding the arguments of the atom are resolved with.
+     * @return true if the atom can have solutions, otherwise false
      */
-    private QueryResultImpl combineResults(Queue<QueryResultImpl> results, boolean distinct) {
-        while (results.size() > 1) {
-            QueryResultImpl a = results.remove();
-            QueryResultImpl b = results.remove();
-            results.add(combineResults(a, b, distinct));
+    boolean isWellFormed(AtomTemplate atom, QueryBindingImpl binding) throws QueryEngineException {
+        if (!performArgumentChecking) {
+            return true;
         }
-
-        return results.remove();
-    }
-
-    /**
-     * Combine two results with the cartesian product.
-     *
-     * @return the combined result
-     */
-    private QueryResultImpl combineResults(QueryResultImpl a, QueryResultImpl b, boolean distinct) {
-        QueryResultImpl result = new QueryResultImpl(a.getQuery());
-
-        for (QueryBindingImpl bindingA : a.getBindings()) {
-            for (QueryBindingImpl bindingB : b.getBindings()) {
-                QueryBindingImpl binding = new QueryBindingImpl();
-                binding.set(bindingA);
-                binding.set(bindingB);
-                result.add(binding);
+        try {
+            return checkArgs(atom, binding);
+        } catch (QueryEngineException e) {
+            // if strict mode is enabled we will throw an exception here
+            if (strictMode) {
+                throw e;
             }
+            return false;
         }
-
-        if (distinct) {
-            return eliminateDuplicates(result);
-        }
-        return result;
-    }
-
-    /**
-     * Union results
-     *
-     * @return the union result
-     */
-    private QueryResultImpl unionResults(QueryImpl query, Queue<QueryResultImpl> results, boolean distinct) {
-        QueryResultImpl result = new QueryResultImpl(query);
-
-        boolean ask = false;
-
-        for (QueryResultImpl r : results) {
-            if (r.ask()) {
-                ask = true;
-            }
-            r.getBindings().forEach(result::add);
-        }
-
-        result.setAsk(ask);
-
-        if (distinct) {
-            return eliminateDuplicates(result);
-        }
-        return result;
     }
 
     /**
-     * Eliminate duplicate bindings.
+     * Computes the candidate bindings for the next step of the evaluation of an atom that still contains
+     * variables.  Every candidate extends the given binding by (at least) one variable of the atom.
      *
-     * @return A new QueryResultImpl instance without diplicates
+     * @param atom    The atom to evaluate.
+     * @param binding The binding the arguments of the atom are resolved with.
+     * @return The candidate bindings.  Candidates are computed lazily.
      */
-    private QueryResultImpl eliminateDuplicates(QueryResultImpl result) {
-        QueryResultImpl ret = new QueryResultImpl(result.getQuery());
-        Set<QueryBindingImpl> distinctSet = new HashSet<>(result.getBindings());
-        distinctSet.forEach(ret::add);
-        return ret;
-    }
-
-    private boolean eval(QueryImpl query,
-                         QueryAtomGroupImpl group,
-                         QueryResultImpl result,
-                         QueryBindingImpl binding,
-                         BoundChecking checkBound) throws QueryEngineException {
-        // Check for termination.  If all the atoms have been processed in this group then we are done.
-        if (group.isEmpty()) {
-            if (query.isSelect() || query.isSelectDistinct()) {
-                result.add(binding.cloneAndFilter(query.getResultVars()));
-            }
-            return true;
-        }
-
-        QueryAtom atom = group.nextAtom();
-        if (performArgumentChecking) {
-            try {
-                checkArgs(atom);
-            } catch (QueryEngineException e) {
-                // if strict mode is enabled we will throw an exception here
-                if (strictMode) {
-                    throw e;
-                }
-                return false;
-            }
-        }
-
-        if (atom.isBound()) {
-            if (checkBound(atom)) {
-                // If the binding is entailed by the ontology then pop the atom and move on to the next one
-                if (eval(query,
-                         group.pop(),
-                         result,
-                         binding,
-                         checkBound)) {
-                    return true;
-                }
-            }
-            return false;
-        }
+    Iterator<QueryBindingImpl> evalAtom(AtomTemplate atom, QueryBindingImpl binding) {
         switch (atom.getType()) {
             case CLASS:
-                return evalClass(query, group, result, binding, atom);
+                return evalClass(binding, atom);
             case INDIVIDUAL:
-                return evalIndividual(query, group, result, binding, atom);
+                return evalIndividual(binding, atom);
             case STRICT_SUB_CLASS_OF:
-                return evalSubClassOf(query, group, result, binding, atom, SubClassOfMode.STRICT);
+                return evalSubClassOf(binding, atom, SubClassOfMode.STRICT);
             case SUB_CLASS_OF:
-                return evalSubClassOf(query, group, result, binding, atom, SubClassOfMode.NON_STRICT);
+                return evalSubClassOf(binding, atom, SubClassOfMode.NON_STRICT);
             case DIRECT_SUB_CLASS_OF:
-                return evalDirectSubClassOf(query, group, result, binding, atom);
+                return evalDirectSubClassOf(binding, atom);
             case EQUIVALENT_CLASS:
-                return evalEquivalentClasses(query, group, result, binding, atom);
+                return evalEquivalentClasses(binding, atom);
             case DOMAIN:
-                return evalDomain(query, group, result, binding, atom);
+                return evalDomain(binding, atom);
             case RANGE:
-                return evalRange(query, group, result, binding, atom);
+                return evalRange(binding, atom);
             case COMPLEMENT_OF:
-                return evalComplementOf(query, group, result, binding, atom);
+                return evalComplementOf(binding, atom);
             case DISJOINT_WITH:
-                return evalDisjointWith(query, group, result, binding, atom);
+                return evalDisjointWith(binding, atom);
             case DIRECT_TYPE:
-                return evalType(query, group, result, binding, atom, true);
+                return evalType(binding, atom, true);
             case TYPE:
-                return evalType(query, group, result, binding, atom, false);
+                return evalType(binding, atom, false);
             case SAME_AS:
-                return evalSameAs(query, group, result, binding, atom);
+                return evalSameAs(binding, atom);
             case DIFFERENT_FROM:
-                return evalDifferentIndividuals(query, group, result, binding, atom);
+                return evalDifferentIndividuals(binding, atom);
             case PROPERTY_VALUE:
-                return evalPropertyValue(query, group, result, binding, atom);
+                return evalPropertyValue(binding, atom);
             case PROPERTY:
-                return evalProperty(query, group, result, binding, atom);
+                return evalProperty(binding, atom);
             case OBJECT_PROPERTY:
-                return evalObjectProperty(query, group, result, binding, atom);
+                return evalObjectProperty(binding, atom);
             case DATA_PROPERTY:
-                return evalDataProperty(query, group, result, binding, atom);
+                return evalDataProperty(binding, atom);
             case ANNOTATION_PROPERTY:
-                return evalAnnotationProperty(query, group, result, binding, atom);
+                return evalAnnotationProperty(binding, atom);
             case FUNCTIONAL:
-                return evalFunctional(query, group, result, binding, atom);
             case INVERSE_FUNCTIONAL:
-                return evalInverseFunctional(query, group, result, binding, atom);
             case REFLEXIVE:
-                return evalReflexive(query, group, result, binding, atom);
             case IRREFLEXIVE:
-                return evalIrreflexive(query, group, result, binding, atom);
             case TRANSITIVE:
-                return evalTransitive(query, group, result, binding, atom);
             case SYMMETRIC:
-                return evalSymmetric(query, group, result, binding, atom);
+                return evalCharacteristic(binding, atom);
             case STRICT_SUB_PROPERTY_OF:
-                return evalSubPropertyOf(query, group, result, binding, atom, true);
+                return evalSubPropertyOf(binding, atom, true);
             case SUB_PROPERTY_OF:
-                return evalSubPropertyOf(query, group, result, binding, atom, false);
+                return evalSubPropertyOf(binding, atom, false);
             case DIRECT_SUB_PROPERTY_OF:
-                return evalDirectSubPropertyOf(query, group, result, binding, atom);
+                return evalDirectSubPropertyOf(binding, atom);
             case EQUIVALENT_PROPERTY:
-                return evalEquivalentProperty(query, group, result, binding, atom);
+                return evalEquivalentProperty(binding, atom);
             case ANNOTATION:
-                return evalAnnotationAssertion(query, group, result, binding, atom);
+                return evalAnnotationAssertion(binding, atom);
+            case TEXT_MATCH:
+                return evalTextMatch(binding, atom);
             default:
                 throw new RuntimeException("Unsupported or unknown atom type.");
         }
     }
 
-    private boolean evalInverseFunctional(QueryImpl query,
-                                          QueryAtomGroupImpl group,
-                                          QueryResultImpl result,
-                                          QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        if (propArg.isVar()) {
-            Set<OWLObjectProperty> candidates = getObjectProperties();
-            for (OWLObjectProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLInverseFunctionalObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalEquivalentProperty(QueryImpl query,
-                                           QueryAtomGroupImpl group,
-                                           QueryResultImpl result,
-                                           QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument prop0Arg = arguments.get(0);
-        QueryArgument prop1Arg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalEquivalentProperty(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument prop0Arg = atom.get(0, binding);
+        QueryArgument prop1Arg = atom.get(1, binding);
         if (prop0Arg.isVar() && prop1Arg.isVar()) {
             Set<OWLObjectProperty> candidates = getObjectProperties();
-            ret = bindAndEvalObjectPropertyCandidates(query, group, result, binding, prop0Arg, candidates);
-
             Set<OWLDataProperty> candidates2 = getDataProperties();
-            if (bindAndEvalDataPropertyCandidates(query, group, result, binding, prop0Arg, candidates2)) {
-                ret = true;
-            }
+            return Iterators.concat(bindObjectPropertyCandidates(binding, prop0Arg, candidates),
+                                    bindCandidates(binding, prop0Arg, candidates2));
         }
         else if (prop0Arg.isVar()) {
             OWLObjectProperty op = asObjectProperty(prop1Arg);
@@ -491,21 +904,11 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclared(op)) {
                 Set<OWLObjectPropertyExpression> candidates = reasoner.getEquivalentObjectProperties(op)
                                                                       .getEntities();
-                for (OWLObjectPropertyExpression c : candidates) {
-                    if (!c.isAnonymous()) {
-                        final QueryBindingImpl new_binding = binding.clone();
-                        new_binding.set(prop0Arg, newURI(c.getNamedProperty().getIRI()));
-                        if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                            ret = true;
-                        }
-                    }
-                }
+                return bindObjectPropertyCandidates(binding, prop0Arg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getEquivalentDataProperties(dp).getEntities();
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, prop0Arg, candidates)) {
-                    ret = true;
-                }
+                return bindCandidates(binding, prop0Arg, candidates);
             }
         }
         else if (prop1Arg.isVar()) {
@@ -515,37 +918,24 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclared(op)) {
                 Set<OWLObjectPropertyExpression> candidates = reasoner.getEquivalentObjectProperties(op)
                                                                       .getEntities();
-                if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, prop1Arg, candidates)) {
-                    ret = true;
-                }
+                return bindObjectPropertyCandidates(binding, prop1Arg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getEquivalentDataProperties(dp).getEntities();
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, prop1Arg, candidates)) {
-                    ret = true;
-                }
+                return bindCandidates(binding, prop1Arg, candidates);
             }
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDirectSubPropertyOf(QueryImpl query,
-                                            QueryAtomGroupImpl group,
-                                            QueryResultImpl result,
-                                            QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subPropArg = arguments.get(0);
-        QueryArgument superPropArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalDirectSubPropertyOf(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument subPropArg = atom.get(0, binding);
+        QueryArgument superPropArg = atom.get(1, binding);
         if (subPropArg.isVar() && superPropArg.isVar()) {
             Set<OWLObjectProperty> objectPropCandidates = getObjectProperties();
-            if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, subPropArg, objectPropCandidates)) {
-                ret = true;
-            }
             Set<OWLDataProperty> dataPropCandidates = getDataProperties();
-            if (bindAndEvalDataPropertyCandidates(query, group, result, binding, subPropArg, dataPropCandidates)) {
-                ret = true;
-            }
+            return Iterators.concat(bindObjectPropertyCandidates(binding, subPropArg, objectPropCandidates),
+                                    bindCandidates(binding, subPropArg, dataPropCandidates));
         }
         else if (subPropArg.isVar()) {
             OWLObjectProperty op = asObjectProperty(superPropArg);
@@ -553,15 +943,11 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclared(op)) {
                 Set<OWLObjectPropertyExpression> candidates = reasoner.getSubObjectProperties(op, true)
                                                                       .getFlattened();
-                if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, subPropArg, candidates)) {
-                    ret = true;
-                }
+                return bindObjectPropertyCandidates(binding, subPropArg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getSubDataProperties(dp, true).getFlattened();
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, subPropArg, candidates)) {
-                    ret = true;
-                }
+                return bindCandidates(binding, subPropArg, candidates);
             }
         }
         else if (superPropArg.isVar()) {
@@ -571,37 +957,24 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclared(op)) {
                 Set<OWLObjectPropertyExpression> candidates = reasoner.getSuperObjectProperties(op, true)
                                                                       .getFlattened();
-                if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, superPropArg, candidates)) {
-                    ret = true;
-                }
+                return bindObjectPropertyCandidates(binding, superPropArg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getSuperDataProperties(dp, true).getFlattened();
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, superPropArg, candidates)) {
-                    ret = true;
-                }
+                return bindCandidates(binding, superPropArg, candidates);
             }
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalSubPropertyOf(QueryImpl query,
-                                      QueryAtomGroupImpl group,
-                                      QueryResultImpl result,
-                                      QueryBindingImpl binding, QueryAtom atom, boolean strict) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subPropArg = arguments.get(0);
-        QueryArgument superPropArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalSubPropertyOf(QueryBindingImpl binding, AtomTemplate atom, boolean strict) {
+        QueryArgument subPropArg = atom.get(0, binding);
+        QueryArgument superPropArg = atom.get(1, binding);
         if (subPropArg.isVar() && superPropArg.isVar()) {
             Set<OWLObjectProperty> candidates = getObjectProperties();
-            if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, subPropArg, candidates)) {
-                ret = true;
-            }
             Set<OWLDataProperty> dataPropertyCandidates = getDataProperties();
-            if (bindAndEvalDataPropertyCandidates(query, group, result, binding, subPropArg, dataPropertyCandidates)) {
-                ret = true;
-            }
+            return Iterators.concat(bindObjectPropertyCandidates(binding, subPropArg, candidates),
+                                    bindCandidates(binding, subPropArg, dataPropertyCandidates));
         }
         else if (subPropArg.isVar()) {
             OWLObjectProperty op = asObjectProperty(superPropArg);
@@ -615,7 +988,7 @@ public class QueryEngineImpl extends QueryEngine {
                 if (!strict) {
                     candidates.addAll(reasoner.getEquivalentObjectProperties(op).getEntities());
                 }
-                bindAndEvalObjectPropertyCandidates(query, group, result, binding, subPropArg, candidates);
+                return bindObjectPropertyCandidates(binding, subPropArg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getSubDataProperties(dp, false).getFlattened();
@@ -623,7 +996,7 @@ public class QueryEngineImpl extends QueryEngine {
                 if (!strict) {
                     candidates.addAll(reasoner.getEquivalentDataProperties(dp).getEntities());
                 }
-                ret = bindAndEvalDataPropertyCandidates(query, group, result, binding, subPropArg, candidates);
+                return bindCandidates(binding, subPropArg, candidates);
             }
         }
         else if (superPropArg.isVar()) {
@@ -638,7 +1011,7 @@ public class QueryEngineImpl extends QueryEngine {
                 if (!strict) {
                     candidates.addAll(reasoner.getEquivalentObjectProperties(op).getEntities());
                 }
-                ret = bindAndEvalObjectPropertyCandidates(query, group, result, binding, superPropArg, candidates);
+                return bindObjectPropertyCandidates(binding, superPropArg, candidates);
             }
             else if (isDeclared(dp)) {
                 Set<OWLDataProperty> candidates = reasoner.getSuperDataProperties(dp, false).getFlattened();
@@ -646,221 +1019,75 @@ public class QueryEngineImpl extends QueryEngine {
                 if (!strict) {
                     candidates.addAll(reasoner.getEquivalentDataProperties(dp).getEntities());
                 }
-                ret = bindAndEvalDataPropertyCandidates(query, group, result, binding, subPropArg, candidates);
+                return bindCandidates(binding, superPropArg, candidates);
             }
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean bindAndEvalObjectPropertyCandidates(QueryImpl query,
-                                                        QueryAtomGroupImpl group,
-                                                        QueryResultImpl result,
-                                                        QueryBindingImpl binding,
-                                                        QueryArgument subPropArg,
-                                                        Set<? extends OWLObjectPropertyExpression> candidates) throws QueryEngineException {
-        boolean ret = false;
-        for (OWLObjectPropertyExpression propExp : candidates) {
-            if (!propExp.isAnonymous()) {
-                final QueryBindingImpl new_binding = binding.clone();
-                new_binding.set(subPropArg, newURI(propExp.asOWLObjectProperty().getIRI()));
-                if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                    ret = true;
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalSymmetric(QueryImpl query,
-                                  QueryAtomGroupImpl group,
-                                  QueryResultImpl result,
-                                  QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        if (propArg.isVar()) {
-            Set<OWLObjectProperty> candidates = getObjectProperties();
-            for (OWLObjectProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLSymmetricObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalTransitive(QueryImpl query,
-                                   QueryAtomGroupImpl group,
-                                   QueryResultImpl result,
-                                   QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        if (propArg.isVar()) {
-            Set<OWLObjectProperty> candidates = getObjectProperties();
-            for (OWLObjectProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLTransitiveObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalIrreflexive(QueryImpl query,
-                                    QueryAtomGroupImpl group,
-                                    QueryResultImpl result,
-                                    QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        if (propArg.isVar()) {
-            Set<OWLObjectProperty> candidates = getObjectProperties();
-            for (OWLObjectProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLIrreflexiveObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalReflexive(QueryImpl query,
-                                  QueryAtomGroupImpl group,
-                                  QueryResultImpl result,
-                                  QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        if (propArg.isVar()) {
-            Set<OWLObjectProperty> candidates = getObjectProperties();
-            for (OWLObjectProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLReflexiveObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private boolean evalFunctional(QueryImpl query,
-                                   QueryAtomGroupImpl group,
-                                   QueryResultImpl result,
-                                   QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
+    /**
+     * Finds solutions to Functional(?p), InverseFunctional(?p), Reflexive(?p), Irreflexive(?p), Transitive(?p)
+     * and Symmetric(?p)
+     */
+    private Iterator<QueryBindingImpl> evalCharacteristic(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
         if (propArg.isVar()) {
-            Set<OWLDataProperty> candidates = getDataProperties();
-            for (OWLDataProperty c : candidates) {
-                if (reasoner.isEntailed(factory.getOWLFunctionalDataPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-
-            Set<OWLObjectProperty> candidates2 = getObjectProperties();
-            for (OWLObjectProperty c : candidates2) {
-                if (reasoner.isEntailed(factory.getOWLFunctionalObjectPropertyAxiom(c))) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(propArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
+            return bindCandidates(binding, propArg, getPropertyCharacteristics().get(atom.getType()));
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalAnnotationProperty(QueryImpl query,
-                                           QueryAtomGroupImpl group,
-                                           QueryResultImpl result,
-                                           QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
+    private Iterator<QueryBindingImpl> evalAnnotationProperty(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
         if (propArg.isVar()) {
             Set<OWLAnnotationProperty> candidates = getAnnotationProperties();
-            for (OWLAnnotationProperty c : candidates) {
-                final QueryBindingImpl new_binding = binding.clone();
-                new_binding.set(propArg, newURI(c.getIRI()));
-                if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                    ret = true;
-                }
-            }
+            return bindCandidates(binding, propArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDataProperty(QueryImpl query,
-                                     QueryAtomGroupImpl group,
-                                     QueryResultImpl result,
-                                     QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
+    private Iterator<QueryBindingImpl> evalDataProperty(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
         if (propArg.isVar()) {
             Set<OWLDataProperty> candidates = getDataProperties();
-            if (bindAndEvalDataPropertyCandidates(query, group, result, binding, propArg, candidates)) {
-                ret = true;
-            }
+            return bindCandidates(binding, propArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalProperty(QueryImpl query,
-                                 QueryAtomGroupImpl group,
-                                 QueryResultImpl result,
-                                 QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
+    private Iterator<QueryBindingImpl> evalProperty(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
         if (propArg.isVar()) {
             Set<OWLObjectProperty> opCandidates = getObjectProperties();
-            if (bindAndEvalObjectPropertyCandidates(query, group, result, binding, propArg, opCandidates)) {
-                ret = true;
-            }
             Set<OWLDataProperty> dpCandidates = getDataProperties();
-            if (bindAndEvalDataPropertyCandidates(query, group, result, binding, propArg, dpCandidates)) {
-                ret = true;
-            }
+            return Iterators.concat(bindCandidates(binding, propArg, opCandidates),
+                                    bindCandidates(binding, propArg, dpCandidates));
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalPropertyValue(QueryImpl query,
-                                      QueryAtomGroupImpl group,
-                                      QueryResultImpl result,
-                                      QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subjectArg = arguments.get(0);
-        QueryArgument propertyArg = arguments.get(1);
-        QueryArgument valueArg = arguments.get(2);
+    private Iterator<QueryBindingImpl> evalPropertyValue(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument subjectArg = atom.get(0, binding);
+        QueryArgument propertyArg = atom.get(1, binding);
+        QueryArgument valueArg = atom.get(2, binding);
         if (subjectArg.isVar()) {
+            if (propertyArg.isURI() && !valueArg.isLiteral() && isDeclared(asObjectProperty(propertyArg))) {
+                // drive the evaluation from the values of the property instead of scanning all individuals
+                OWLObjectProperty property = asObjectProperty(propertyArg);
+                PropertyValueIndex.PropertyValues values = propertyValueIndex.get(property);
+                if (valueArg.isURI()) {
+                    return bindCandidates(binding, subjectArg, values.getSubjects(asIndividual(valueArg)));
+                }
+                if (valueArg.equals(subjectArg)) {
+                    return bindCandidates(binding, subjectArg, values.getSubjects());
+                }
+                return Iterators.concat(Iterators.transform(values.getSubjects().iterator(), subject -> {
+                    QueryBindingImpl subjectBinding = bind(binding, subjectArg, newURI(subject.getIRI()));
+                    return bindCandidates(subjectBinding, valueArg, values.getValues(subject));
+                }));
+            }
             Set<OWLNamedIndividual> candidates = getIndividuals();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, subjectArg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, subjectArg, candidates);
         }
         else if (propertyArg.isVar()) {
             boolean object = true, data = true;
@@ -871,242 +1098,154 @@ public class QueryEngineImpl extends QueryEngine {
                 data = false;
             }
 
+            Iterator<QueryBindingImpl> objectCandidates = Collections.emptyIterator();
             if (object) {
                 Set<OWLObjectProperty> candidates = getObjectProperties();
-                ret = bindAndEvalObjectPropertyCandidates(query, group, result, binding, propertyArg, candidates);
+                objectCandidates = bindCandidates(binding, propertyArg, candidates);
             }
 
+            Iterator<QueryBindingImpl> dataCandidates = Collections.emptyIterator();
             if (data) {
                 Set<OWLDataProperty> candidates = getDataProperties();
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, propertyArg, candidates)) {
-                    ret = true;
-                }
+                dataCandidates = bindCandidates(binding, propertyArg, candidates);
             }
+            return Iterators.concat(objectCandidates, dataCandidates);
         }
         else if (valueArg.isVar()) {
             OWLNamedIndividual ind0 = asIndividual(subjectArg);
             OWLObjectProperty op1 = asObjectProperty(propertyArg);
             OWLDataProperty dp1 = asDataProperty(propertyArg);
             if (isDeclared(op1)) {
-                Set<OWLNamedIndividual> candidates = reasoner.getObjectPropertyValues(ind0, op1).getFlattened();
-                ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, valueArg, candidates,
-                                                           BoundChecking.CHECK_BOUND);
+                Collection<OWLNamedIndividual> candidates = propertyValueIndex.isInference()
+                        ? reasoner.getObjectPropertyValues(ind0, op1).getFlattened()
+                        : propertyValueIndex.get(op1).getValues(ind0);
+                return bindCandidates(binding, valueArg, candidates);
             }
             else if (isDeclared(dp1)) {
                 Set<OWLLiteral> candidates = reasoner.getDataPropertyValues(ind0, dp1);
-                for (OWLLiteral c : candidates) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(valueArg, QueryArgument.newLiteral(c));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
+                return Iterators.transform(candidates.iterator(),
+                                           c -> bind(binding, valueArg, QueryArgument.newLiteral(c)));
             }
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalObjectProperty(QueryImpl query,
-                                       QueryAtomGroupImpl group,
-                                       QueryResultImpl result,
-                                       QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        QueryArgument propArg = atom.getArguments().get(0);
+    private Iterator<QueryBindingImpl> evalObjectProperty(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
         if (propArg.isVar()) {
             Set<OWLObjectProperty> candidates = getObjectProperties();
-            ret = bindAndEvalObjectPropertyCandidates(query, group, result, binding, propArg, candidates);
+            return bindCandidates(binding, propArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDifferentIndividuals(QueryImpl query,
-                                             QueryAtomGroupImpl group,
-                                             QueryResultImpl result,
-                                             QueryBindingImpl binding,
-                                             QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument ind0Arg = arguments.get(0);
-        QueryArgument ind1Arg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalDifferentIndividuals(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument ind0Arg = atom.get(0, binding);
+        QueryArgument ind1Arg = atom.get(1, binding);
         if (ind0Arg.isVar() && ind1Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = getIndividuals();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind0Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind0Arg, candidates);
         }
         else if (ind0Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = reasoner.getDifferentIndividuals(asIndividual(ind1Arg))
                                                          .getFlattened();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind0Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind0Arg, candidates);
         }
         else if (ind1Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = reasoner.getDifferentIndividuals(asIndividual(ind0Arg))
                                                          .getFlattened();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind1Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind1Arg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalSameAs(QueryImpl query,
-                               QueryAtomGroupImpl group,
-                               QueryResultImpl result,
-                               QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        QueryArgument ind0Arg = atom.getArguments().get(0);
-        QueryArgument ind1Arg = atom.getArguments().get(1);
+    private Iterator<QueryBindingImpl> evalSameAs(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument ind0Arg = atom.get(0, binding);
+        QueryArgument ind1Arg = atom.get(1, binding);
         if (ind0Arg.isVar() && ind1Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = getIndividuals();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind0Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind0Arg, candidates);
         }
         else if (ind0Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = reasoner.getSameIndividuals(asIndividual(ind1Arg)).getEntities();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind0Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind0Arg, candidates);
         }
         else if (ind1Arg.isVar()) {
             Set<OWLNamedIndividual> candidates = reasoner.getSameIndividuals(asIndividual(ind0Arg)).getEntities();
-            ret = bindAndEvalNamedIndividualCandidates(query, group, result, binding, ind1Arg, candidates,
-                                                       BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, ind1Arg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalType(QueryImpl query,
-                             QueryAtomGroupImpl group,
-                             QueryResultImpl result,
-                             QueryBindingImpl binding, QueryAtom atom, boolean strict) throws QueryEngineException {
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument indArg = arguments.get(0);
-        QueryArgument typeArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalType(QueryBindingImpl binding, AtomTemplate atom, boolean strict) {
+        QueryArgument indArg = atom.get(0, binding);
+        QueryArgument typeArg = atom.get(1, binding);
         if (indArg.isVar() && typeArg.isVar()) {
             Set<OWLNamedIndividual> candidates = getIndividuals();
-            return bindAndEvalNamedIndividualCandidates(query, group, result, binding, indArg, candidates,
-                                                        BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, indArg, candidates);
         }
         else if (indArg.isVar()) {
             OWLClass type = asClass(typeArg);
             Set<OWLNamedIndividual> candidates = reasoner.getInstances(type, strict).getFlattened();
-            return bindAndEvalNamedIndividualCandidates(query, group, result, binding, indArg, candidates,
-                                                        BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, indArg, candidates);
         }
-        else if (typeArg.isVar()) {
-            Set<OWLClass> candidates = reasoner.getTypes(asIndividual(indArg), strict).getFlattened();
-            return bindAndEvalClassCandidates(query, group, result, binding, typeArg, candidates, BoundChecking.CHECK_BOUND);
-        }
-        return false;
-    }
-
-    private boolean bindAndEvalNamedIndividualCandidates(QueryImpl query,
-                                                         QueryAtomGroupImpl group,
-                                                         QueryResultImpl result,
-                                                         QueryBindingImpl binding,
-                                                         QueryArgument indArg,
-                                                         Set<OWLNamedIndividual> candidates,
-                                                         BoundChecking checkBound) throws QueryEngineException {
-        boolean ret = false;
-        for (OWLNamedIndividual c : candidates) {
-            final QueryBindingImpl new_binding = binding.clone();
-            new_binding.set(indArg, newURI(c.getIRI()));
-            if (eval(query, group.bind(new_binding), result, new_binding, checkBound)) {
-                ret = true;
-            }
+        else if (typeArg.isVar()) {
+            Set<OWLClass> candidates = reasoner.getTypes(asIndividual(indArg), strict).getFlattened();
+            return bindCandidates(binding, typeArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDisjointWith(QueryImpl query,
-                                     QueryAtomGroupImpl group,
-                                     QueryResultImpl result,
-                                     QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        QueryArgument cls0Arg = atom.getArguments().get(0);
-        QueryArgument cls1Arg = atom.getArguments().get(1);
+    private Iterator<QueryBindingImpl> evalDisjointWith(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument cls0Arg = atom.get(0, binding);
+        QueryArgument cls1Arg = atom.get(1, binding);
         if (cls0Arg.isVar() && cls1Arg.isVar()) {
             Set<OWLClass> candidates = getClasses();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, cls0Arg, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, cls0Arg, candidates);
         }
         else if (cls0Arg.isVar()) {
             Set<OWLClass> candidates = reasoner.getDisjointClasses(asClass(cls1Arg)).getFlattened();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, cls0Arg, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, cls0Arg, candidates);
         }
         else if (cls1Arg.isVar()) {
             Set<OWLClass> candidates = reasoner.getDisjointClasses(asClass(cls0Arg)).getFlattened();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, cls1Arg, candidates, BoundChecking.CHECK_BOUND);
-        }
-        return ret;
-    }
-
-    private boolean bindAndEvalClassCandidates(QueryImpl query,
-                                               QueryAtomGroupImpl group,
-                                               QueryResultImpl result,
-                                               QueryBindingImpl binding,
-                                               QueryArgument clsArg,
-                                               Collection<OWLClass> candidates,
-                                               BoundChecking checkBound) throws QueryEngineException {
-        boolean ret = false;
-        for (OWLClass c : candidates) {
-            final QueryBindingImpl new_binding = binding.clone();
-            new_binding.set(clsArg, newURI(c.getIRI()));
-            if (eval(query, group.bind(new_binding), result, new_binding, checkBound)) {
-                ret = true;
-            }
+            return bindCandidates(binding, cls1Arg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalComplementOf(QueryImpl query,
-                                     QueryAtomGroupImpl group,
-                                     QueryResultImpl result,
-                                     QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument arg0 = arguments.get(0);
-        QueryArgument arg1 = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalComplementOf(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument arg0 = atom.get(0, binding);
+        QueryArgument arg1 = atom.get(1, binding);
         if (arg0.isVar() && arg1.isVar()) {
             Set<OWLClass> candidates = getClasses();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, arg0, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, arg0, candidates);
         }
         else if (arg0.isVar()) {
             Set<OWLClass> candidates = reasoner.getEquivalentClasses(factory.getOWLObjectComplementOf(asClass(
                     arg1))).getEntities();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, arg0, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, arg0, candidates);
         }
         else if (arg1.isVar()) {
             Set<OWLClass> candidates = reasoner.getEquivalentClasses(factory.getOWLObjectComplementOf(asClass(
                     arg0))).getEntities();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, arg1, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, arg1, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalRange(QueryImpl query,
-                              QueryAtomGroupImpl group,
-                              QueryResultImpl result,
-                              QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propArg = arguments.get(0);
-        QueryArgument rngArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalRange(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propArg = atom.get(0, binding);
+        QueryArgument rngArg = atom.get(1, binding);
         if (propArg.isVar() && rngArg.isVar() || propArg.isVar()) {
             if (isDeclaredObjectProperty(propArg)) {
-                ret = bindAndEvalObjectPropertyCandidates(query,
-                                                          group,
-                                                          result,
-                                                          binding,
-                                                          propArg,
-                                                          getObjectProperties());
+                return bindCandidates(binding, propArg, getObjectProperties());
             }
             else if (isDeclaredDataProperty(propArg)) {
-                if (bindAndEvalDataPropertyCandidates(query, group, result, binding, propArg, getDataProperties())) {
-                    ret = true;
-                }
+                return bindCandidates(binding, propArg, getDataProperties());
             }
             else if (isDeclaredAnnotationProperty(propArg)) {
-                if (bindAndEvalAnnotationPropertyCandidates(query, group, result, binding, propArg)) {
-                    ret = true;
-                }
+                return bindCandidates(binding, propArg, getAnnotationProperties());
             }
         }
         else if (rngArg.isVar()) {
@@ -1114,68 +1253,28 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclaredObjectProperty(propArg)) {
                 OWLObjectProperty property = asObjectProperty(propArg);
                 Set<OWLClass> candidates = reasoner.getObjectPropertyRanges(property, false).getFlattened();
-                ret = bindAndEvalClassCandidates(query, group, result, binding, rngArg, candidates, BoundChecking.CHECK_BOUND);
+                return bindCandidates(binding, rngArg, candidates);
             }
             else if (isDeclaredDataProperty(propArg)) {
                 Set<OWLDatatype> candidates = reasoner.getRootOntology().getDatatypesInSignature();
-                for (OWLDatatype c : candidates) {
-                    final QueryBindingImpl new_binding = binding.clone();
-                    new_binding.set(rngArg, newURI(c.getIRI()));
-                    if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                        ret = true;
-                    }
-                }
-            }
-            else if (isDeclaredAnnotationProperty(propArg)) {
-                ret = false;
+                return bindCandidates(binding, rngArg, candidates);
             }
         }
-        return ret;
-    }
-
-    private boolean bindAndEvalAnnotationPropertyCandidates(QueryImpl query,
-                                                            QueryAtomGroupImpl group,
-                                                            QueryResultImpl result,
-                                                            QueryBindingImpl binding,
-                                                            QueryArgument propArg) throws QueryEngineException {
-        boolean ret = false;
-        for (OWLAnnotationProperty property : getAnnotationProperties()) {
-            final QueryBindingImpl new_binding = binding.clone();
-            new_binding.set(propArg, newURI(property.getIRI()));
-            if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                ret = true;
-            }
-        }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDomain(QueryImpl query,
-                               QueryAtomGroupImpl group,
-                               QueryResultImpl result,
-                               QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument propertyArg = arguments.get(0);
-        QueryArgument domainArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalDomain(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument propertyArg = atom.get(0, binding);
+        QueryArgument domainArg = atom.get(1, binding);
         if (propertyArg.isVar() && domainArg.isVar() || propertyArg.isVar()) {
             if (isDeclaredObjectProperty(propertyArg)) {
-                ret = bindAndEvalObjectPropertyCandidates(query,
-                                                          group,
-                                                          result,
-                                                          binding,
-                                                          propertyArg,
-                                                          getObjectProperties());
+                return bindCandidates(binding, propertyArg, getObjectProperties());
             }
             else if (isDeclaredDataProperty(propertyArg)) {
-                ret = bindAndEvalDataPropertyCandidates(query,
-                                                        group,
-                                                        result,
-                                                        binding,
-                                                        propertyArg,
-                                                        getDataProperties());
+                return bindCandidates(binding, propertyArg, getDataProperties());
             }
             else if (isDeclaredAnnotationProperty(propertyArg)) {
-                ret = bindAndEvalAnnotationPropertyCandidates(query, group, result, binding, propertyArg);
+                return bindCandidates(binding, propertyArg, getAnnotationProperties());
             }
         }
         else if (domainArg.isVar()) {
@@ -1183,86 +1282,61 @@ public class QueryEngineImpl extends QueryEngine {
             if (isDeclaredObjectProperty(propertyArg)) {
                 OWLObjectProperty property = asObjectProperty(propertyArg);
                 Set<OWLClass> candidates = reasoner.getObjectPropertyDomains(property, false).getFlattened();
-                ret = bindAndEvalClassCandidates(query, group, result, binding, domainArg, candidates,
-                                                 BoundChecking.CHECK_BOUND);
+                return bindCandidates(binding, domainArg, candidates);
             }
             else if (isDeclaredDataProperty(propertyArg)) {
                 OWLDataProperty property = asDataProperty(propertyArg);
                 Set<OWLClass> candidates = reasoner.getDataPropertyDomains(property, false).getFlattened();
-                ret = bindAndEvalClassCandidates(query, group, result, binding, domainArg, candidates,
-                                                 BoundChecking.CHECK_BOUND);
-            }
-            else if (isDeclaredAnnotationProperty(propertyArg)) {
-                ret = false;
+                return bindCandidates(binding, domainArg, candidates);
             }
         }
-        return ret;
-    }
-
-    private boolean bindAndEvalDataPropertyCandidates(QueryImpl query,
-                                                      QueryAtomGroupImpl group,
-                                                      QueryResultImpl result,
-                                                      QueryBindingImpl binding,
-                                                      QueryArgument propertyArg,
-                                                      Set<OWLDataProperty> candidates) throws QueryEngineException {
-        boolean ret = false;
-        for (OWLDataProperty property : candidates) {
-            final QueryBindingImpl new_binding = binding.clone();
-            new_binding.set(propertyArg, newURI(property.getIRI()));
-            if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                ret = true;
-            }
-        }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalEquivalentClasses(QueryImpl query,
-                                          QueryAtomGroupImpl group,
-                                          QueryResultImpl result,
-                                          QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument clsArg0 = arguments.get(0);
-        QueryArgument clsArg1 = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalEquivalentClasses(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument clsArg0 = atom.get(0, binding);
+        QueryArgument clsArg1 = atom.get(1, binding);
         if (clsArg0.isVar() && clsArg1.isVar()) {
             Set<OWLClass> candidates = getClasses();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, clsArg0, candidates, BoundChecking.DO_NOT_CHECK_BOUND);
+            return bindCandidates(binding, clsArg0, candidates);
         }
         else if (clsArg0.isVar()) {
             Set<OWLClass> candidates = reasoner.getEquivalentClasses(asClass(clsArg1)).getEntities();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, clsArg0, candidates, BoundChecking.DO_NOT_CHECK_BOUND);
+            return bindCandidates(binding, clsArg0, candidates);
         }
         else if (clsArg1.isVar()) {
             Set<OWLClass> candidates = reasoner.getEquivalentClasses(asClass(clsArg0)).getEntities();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, clsArg1, candidates, BoundChecking.DO_NOT_CHECK_BOUND);
+            return bindCandidates(binding, clsArg1, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalDirectSubClassOf(QueryImpl query,
-                                         QueryAtomGroupImpl group,
-                                         QueryResultImpl result,
-                                         QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subClsArg = arguments.get(0);
-        QueryArgument superClsArg = arguments.get(1);
+    private Iterator<QueryBindingImpl> evalDirectSubClassOf(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument subClsArg = atom.get(0, binding);
+        QueryArgument superClsArg = atom.get(1, binding);
         if (subClsArg.isVar() && superClsArg.isVar()) {
             Set<OWLClass> candidates = getClasses();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, subClsArg, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, subClsArg, candidates);
         }
         else if (subClsArg.isVar()) {
             OWLClass superCls = asClass(superClsArg);
+            ClassHierarchyIndex hierarchy = getClassHierarchy(superCls);
+            if (hierarchy != null) {
+                return bindCandidates(binding, subClsArg, hierarchy.getSubClasses(superCls, true));
+            }
             Set<OWLClass> candidates = reasoner.getSubClasses(superCls, true).getFlattened();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, subClsArg, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, subClsArg, candidates);
         }
         else if (superClsArg.isVar()) {
             OWLClass subCls = asClass(subClsArg);
+            ClassHierarchyIndex hierarchy = getClassHierarchy(subCls);
+            if (hierarchy != null) {
+                return bindCandidates(binding, superClsArg, hierarchy.getSuperClasses(subCls, true));
+            }
             Set<OWLClass> candidates = reasoner.getSuperClasses(subCls, true).getFlattened();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, superClsArg, candidates,
-                                             BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, superClsArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
     private enum SubClassOfMode {
@@ -1270,26 +1344,30 @@ public class QueryEngineImpl extends QueryEngine {
         NON_STRICT
     }
 
-    private boolean evalSubClassOf(QueryImpl query,
-                                   QueryAtomGroupImpl group,
-                                   QueryResultImpl result,
-                                   QueryBindingImpl binding, QueryAtom atom, SubClassOfMode mode) throws QueryEngineException {
-        boolean ret = false;
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subClsArg = arguments.get(0);
-        QueryArgument superClsArg = arguments.get(1);
-        QueryBindingImpl new_binding;
+    private Iterator<QueryBindingImpl> evalSubClassOf(QueryBindingImpl binding, AtomTemplate atom, SubClassOfMode mode) {
+        QueryArgument subClsArg = atom.get(0, binding);
+        QueryArgument superClsArg = atom.get(1, binding);
         if (subClsArg.isVar() && superClsArg.isVar()) {
             Set<OWLClass> candidates = getClasses();
-            ret = bindAndEvalClassCandidates(query, group, result, binding, subClsArg, candidates, BoundChecking.CHECK_BOUND);
+            return bindCandidates(binding, subClsArg, candidates);
         }
         else if (subClsArg.isVar()) {
             // SubClassOf(?x C)
             OWLClass superCls = asClass(superClsArg);
+            ClassHierarchyIndex hierarchy = superCls.isOWLThing() ? null : getClassHierarchy(superCls);
             Set<OWLClass> candidates;
             if(superCls.isOWLThing()) {
                 candidates = getClasses();
             }
+            else if (hierarchy != null) {
+                Iterator<OWLClass> subClasses = hierarchy.getSubClasses(superCls, false);
+                if (mode == SubClassOfMode.NON_STRICT) {
+                    // the equivalent classes are not sub classes in the hierarchy, so there are no duplicates
+                    subClasses = Iterators.concat(subClasses,
+                                                  reasoner.getEquivalentClasses(superCls).getEntities().iterator());
+                }
+                return bindCandidates(binding, subClsArg, subClasses);
+            }
             else {
                 candidates = reasoner.getSubClasses(superCls, false).getFlattened();
             }
@@ -1297,73 +1375,57 @@ public class QueryEngineImpl extends QueryEngine {
             if (mode == SubClassOfMode.NON_STRICT && !superCls.isOWLThing()) {
                 candidates.addAll(reasoner.getEquivalentClasses(asClass(superClsArg)).getEntities());
             }
-            // Standard reasoning task, so we don't need to check the bound again
-            if(bindAndEvalClassCandidates(query, group, result, binding, subClsArg, candidates, BoundChecking.DO_NOT_CHECK_BOUND)) {
-                ret = true;
-            }
+            return bindCandidates(binding, subClsArg, candidates);
         }
         else if (superClsArg.isVar()) {
             // SubClassOf(C ?x)
             OWLClass class0 = asClass(subClsArg);
+            ClassHierarchyIndex hierarchy = getClassHierarchy(class0);
+            if (hierarchy != null) {
+                Iterator<OWLClass> superClasses = hierarchy.getSuperClasses(class0, false);
+                if (mode == SubClassOfMode.NON_STRICT) {
+                    superClasses = Iterators.concat(superClasses,
+                                                    reasoner.getEquivalentClasses(class0).getEntities().iterator());
+                }
+                return bindCandidates(binding, superClsArg, superClasses);
+            }
             Set<OWLClass> candidates = reasoner.getSuperClasses(class0, false).getFlattened();
 
             // if not strict we also include all equivalent classIris
             if (mode == SubClassOfMode.NON_STRICT) {
                 candidates.addAll(reasoner.getEquivalentClasses(asClass(subClsArg)).getEntities());
             }
-            for (OWLClass c : candidates) {
-                new_binding = binding.clone();
-                new_binding.set(superClsArg, newURI(c.getIRI()));
-                if (eval(query, group.bind(new_binding), result, new_binding, BoundChecking.CHECK_BOUND)) {
-                    ret = true;
-                }
-            }
+            return bindCandidates(binding, superClsArg, candidates);
         }
-        return ret;
+        return Collections.emptyIterator();
     }
 
-    private boolean evalIndividual(QueryImpl query,
-                                   QueryAtomGroupImpl group,
-                                   QueryResultImpl result,
-                                   QueryBindingImpl binding,
-                                   QueryAtom atom) throws QueryEngineException {
-        QueryArgument indArg = atom.getArguments().get(0);
+    private Iterator<QueryBindingImpl> evalIndividual(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument indArg = atom.get(0, binding);
         if (!indArg.isVar()) {
-            return false;
+            return Collections.emptyIterator();
         }
-        BoundChecking boundChecking = !binding.isBound(indArg) ? BoundChecking.DO_NOT_CHECK_BOUND : BoundChecking.CHECK_BOUND;
         Set<OWLNamedIndividual> candidates = getIndividuals();
-        return bindAndEvalNamedIndividualCandidates(query, group, result, binding, indArg, candidates,
-                                                    BoundChecking.CHECK_BOUND);
+        return bindCandidates(binding, indArg, candidates);
     }
 
     /**
      * Finds solutions to Class(?x)
      */
-    private boolean evalClass(QueryImpl query,
-                              QueryAtomGroupImpl group,
-                              QueryResultImpl result,
-                              QueryBindingImpl binding, QueryAtom atom) throws QueryEngineException {
-        QueryArgument clsArg = atom.getArguments().get(0);
+    private Iterator<QueryBindingImpl> evalClass(QueryBindingImpl binding, AtomTemplate atom) {
+        QueryArgument clsArg = atom.get(0, binding);
         if (!clsArg.isVar()) {
-            return false;
+            return Collections.emptyIterator();
         }
-        BoundChecking boundChecking;
-        // Need to check this but I think that if the variable is not bound then there's no need to recheck solutions
         Set<OWLClass> candidates = getClasses();
-        return bindAndEvalClassCandidates(query, group, result, binding, clsArg, candidates, BoundChecking.DO_NOT_CHECK_BOUND);
-    }
-
-    private boolean evalAnnotationAssertion(@Nonnull QueryImpl query,
-                                            @Nonnull QueryAtomGroupImpl group,
-                                            @Nonnull QueryResultImpl result,
-                                            @Nonnull QueryBindingImpl binding,
-                                            @Nonnull QueryAtom atom) throws QueryEngineException {
-        List<QueryArgument> arguments = atom.getArguments();
-        QueryArgument subjectArg = arguments.get(0);
-        QueryArgument propertyArg = arguments.get(1);
-        QueryArgument valueArg = arguments.get(2);
-        boolean ret = false;
+        return bindCandidates(binding, clsArg, candidates);
+    }
+
+    private Iterator<QueryBindingImpl> evalAnnotationAssertion(@Nonnull QueryBindingImpl binding,
+                                                               @Nonnull AtomTemplate atom) {
+        QueryArgument subjectArg = atom.get(0, binding);
+        QueryArgument propertyArg = atom.get(1, binding);
+        QueryArgument valueArg = atom.get(2, binding);
         boolean subjectMatched = !subjectArg.isVar() || binding.isBound(subjectArg);
         boolean propertyMatched = !propertyArg.isVar() || binding.isBound(propertyArg);
         boolean valueMatched = !valueArg.isVar() || binding.isBound(valueArg);
@@ -1372,40 +1434,43 @@ public class QueryEngineImpl extends QueryEngine {
                 if (!valueMatched) {
                     // Given subject and property
                     // Fill in values
-                    for (OWLAnnotationAssertionAxiom ax : getAnnotationAssertionAxiomsForBoundSubject(subjectArg)) {
-                        if (isBoundToAnnotationAssertionProperty(propertyArg, ax)) {
-                            QueryBindingImpl new_binding = binding.clone();
-                            bindAnnotationAssertionValue(valueArg, ax, new_binding);
-                            eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                            ret = true;
-                        }
-                    }
+                    return Iterators.transform(
+                            Iterators.filter(getAnnotationAssertionAxiomsForBoundSubject(subjectArg).iterator(),
+                                             ax -> isBoundToAnnotationAssertionProperty(propertyArg, ax)
+                                                     && hasBindableValue(ax)),
+                            ax -> {
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationAssertionValue(valueArg, ax, new_binding);
+                                return new_binding;
+                            });
                 }
             }
             else {
                 if (valueMatched) {
                     // Given subject and value
-                    for (OWLAnnotationAssertionAxiom ax : getAnnotationAssertionAxiomsForBoundSubject(subjectArg)) {
-                        // Check value is equal
-                        OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
-                        // Match any property
-                        if (ax.getValue().equals(value)) {
-                            QueryBindingImpl new_binding = binding.clone();
-                            bindAnnotationProperty(ax, propertyArg, new_binding);
-                            eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                            ret = true;
-                        }
-                    }
+                    // Check value is equal
+                    OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
+                    // Match any property
+                    return Iterators.transform(
+                            Iterators.filter(getAnnotationAssertionAxiomsForBoundSubject(subjectArg).iterator(),
+                                             ax -> ax.getValue().equals(value)),
+                            ax -> {
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationProperty(ax, propertyArg, new_binding);
+                                return new_binding;
+                            });
                 }
                 else {
                     // Just given subject
-                    for (OWLAnnotationAssertionAxiom ax : getAnnotationAssertionAxiomsForBoundSubject(subjectArg)) {
-                        QueryBindingImpl new_binding = binding.clone();
-                        bindAnnotationProperty(ax, propertyArg, new_binding);
-                        bindAnnotationValue(ax, valueArg, new_binding);
-                        eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                        ret = true;
-                    }
+                    return Iterators.transform(
+                            Iterators.filter(getAnnotationAssertionAxiomsForBoundSubject(subjectArg).iterator(),
+                                             this::hasBindableValue),
+                            ax -> {
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationProperty(ax, propertyArg, new_binding);
+                                bindAnnotationValue(ax, valueArg, new_binding);
+                                return new_binding;
+                            });
                 }
             }
         }
@@ -1413,67 +1478,152 @@ public class QueryEngineImpl extends QueryEngine {
             if (propertyMatched) {
                 if (valueMatched) {
                     // Given property and value
-                    for (OWLAnnotationAssertionAxiom ax : unannotatedAxioms) {
-                        if (ax.getProperty().getIRI().equals(propertyArg.getValueAsIRI())) {
-                            QueryBindingImpl new_binding = binding.clone();
-                            OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
-                            if (ax.getValue().equals(value)) {
+                    OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
+                    return Iterators.transform(
+                            annotationAssertionsByPropertyAndValue.get(Arrays.asList(propertyArg.getValueAsIRI(), value))
+                                                                  .iterator(),
+                            ax -> {
                                 // Any subject match
+                                QueryBindingImpl new_binding = binding.clone();
                                 bindAnnotationSubject(ax, subjectArg, new_binding);
-                                eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                                ret = true;
-                            }
-                        }
-                    }
+                                return new_binding;
+                            });
                 }
                 else {
                     // Given property
-                    for (OWLAnnotationAssertionAxiom ax : unannotatedAxioms) {
-                        if (isBoundToAnnotationAssertionProperty(propertyArg, ax)) {
-                            // Any subject, Any value
-                            QueryBindingImpl new_binding = binding.clone();
-                            bindAnnotationSubject(ax, subjectArg, new_binding);
-                            bindAnnotationAssertionValue(valueArg, ax, new_binding);
-                            eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                            ret = true;
-                        }
-                    }
+                    return Iterators.transform(
+                            Iterators.filter(annotationAssertionsByProperty.get(propertyArg.getValueAsIRI()).iterator(),
+                                             this::hasBindableValue),
+                            ax -> {
+                                // Any subject, Any value
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationSubject(ax, subjectArg, new_binding);
+                                bindAnnotationAssertionValue(valueArg, ax, new_binding);
+                                return new_binding;
+                            });
                 }
             }
             else {
                 if (valueMatched) {
                     // Annotation assertions with the specified value count
-                    for (OWLAnnotationAssertionAxiom ax : unannotatedAxioms) {
-                        QueryBindingImpl new_binding = binding.clone();
-                        OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
-                        if (ax.getValue().equals(value)) {
-                            bindAnnotationSubject(ax, subjectArg, new_binding);
-                            bindAnnotationProperty(ax, propertyArg, new_binding);
-                            eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                            ret = true;
-                        }
-                    }
+                    OWLAnnotationValue value = getBoundAnnotationValue(valueArg);
+                    return Iterators.transform(
+                            annotationAssertionsByValue.get(value).iterator(),
+                            ax -> {
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationSubject(ax, subjectArg, new_binding);
+                                bindAnnotationProperty(ax, propertyArg, new_binding);
+                                return new_binding;
+                            });
                 }
                 else {
                     // Nothing matched - every annotation assertion counts
-                    for (OWLAnnotationAssertionAxiom ax : unannotatedAxioms) {
-                        QueryBindingImpl new_binding = binding.clone();
-                        bindAnnotationSubject(ax, subjectArg, new_binding);
-                        bindAnnotationProperty(ax, propertyArg, new_binding);
-                        bindAnnotationValue(ax, valueArg, new_binding);
-                        eval(query, group.bind(new_binding), result, new_binding, BoundChecking.DO_NOT_CHECK_BOUND);
-                        ret = true;
-                    }
+                    return Iterators.transform(
+                            Iterators.filter(unannotatedAxioms.iterator(), this::hasBindableValue),
+                            ax -> {
+                                QueryBindingImpl new_binding = binding.clone();
+                                bindAnnotationSubject(ax, subjectArg, new_binding);
+                                bindAnnotationProperty(ax, propertyArg, new_binding);
+                                bindAnnotationValue(ax, valueArg, new_binding);
+                                return new_binding;
+                            });
                 }
             }
         }
-        return ret;
+        return Collections.emptyIterator();
+    }
+
+    /**
+     * Anonymous annotation values cannot be bound to a variable.  Annotation assertions with such values
+     * are therefore skipped when the value is asked for, otherwise the value would stay unbound forever.
+     */
+    private boolean hasBindableValue(OWLAnnotationAssertionAxiom ax) {
+        return ax.getValue() instanceof IRI || ax.getValue() instanceof OWLLiteral;
+    }
+
+    /**
+     * Creates a copy of the binding in which the specified argument is bound to the given value.
+     */
+    private QueryBindingImpl bind(QueryBindingImpl binding, QueryArgument arg, QueryArgument value) {
+        final QueryBindingImpl new_binding = binding.clone();
+        new_binding.set(arg, value);
+        return new_binding;
+    }
+
+    private Iterator<QueryBindingImpl> bindCandidates(QueryBindingImpl binding,
+                                                      QueryArgument arg,
+                                                      Collection<? extends HasIRI> candidates) {
+        return bindCandidates(binding, arg, candidates.iterator());
+    }
+
+    private Iterator<QueryBindingImpl> bindCandidates(QueryBindingImpl binding,
+                                                      QueryArgument arg,
+                                                      Iterator<? extends HasIRI> candidates) {
+        return Iterators.transform(candidates, c -> bind(binding, arg, newURI(c.getIRI())));
+    }
+
+    private Iterator<QueryBindingImpl> bindObjectPropertyCandidates(QueryBindingImpl binding,
+                                                                    QueryArgument arg,
+                                                                    Collection<? extends OWLObjectPropertyExpression> candidates) {
+        return Iterators.transform(Iterators.filter(candidates.iterator(), propExp -> !propExp.isAnonymous()),
+                                   propExp -> bind(binding, arg, newURI(propExp.asOWLObjectProperty().getIRI())));
     }
 
     private boolean isBoundToAnnotationAssertionProperty(QueryArgument propertyArg, OWLAnnotationAssertionAxiom ax) {
         return ax.getProperty().getIRI().equals(propertyArg.getValueAsIRI());
     }
 
+    private Iterator<QueryBindingImpl> evalTextMatch(@Nonnull QueryBindingImpl binding, @Nonnull AtomTemplate atom) {
+        QueryArgument subjectArg = atom.get(0, binding);
+        QueryArgument propertyArg = atom.get(1, binding);
+        QueryArgument queryArg = atom.get(2, binding);
+        if (!queryArg.isLiteral()) {
+            return Collections.emptyIterator();
+        }
+        OWLLiteral query = queryArg.getValueAsLiteral();
+        AnnotationTextIndex index = getTextIndex();
+        int[] matches = index.search(query.getLiteral(),
+                                     query.getLang(),
+                                     propertyArg.isURI() ? propertyArg.getValueAsIRI() : null,
+                                     subjectArg.isURI() ? subjectArg.getValueAsIRI() : null);
+        boolean sameVar = subjectArg.isVar() && subjectArg.equals(propertyArg);
+        // a subject can have several matching literals for a property, but is a solution only once, so the
+        // matches are reduced to the distinct values of the variables before anything is bound
+        Set<List<IRI>> solutions = new LinkedHashSet<>();
+        for (int id : matches) {
+            IRI subject = index.getSubject(id);
+            IRI property = index.getProperty(id);
+            if (sameVar && !subject.equals(property)) {
+                continue;
+            }
+            solutions.add(Arrays.asList(subjectArg.isVar() ? subject : null, propertyArg.isVar() ? property : null));
+        }
+        return Iterators.transform(solutions.iterator(), solution -> {
+            QueryBindingImpl new_binding = binding.clone();
+            if (subjectArg.isVar()) {
+                new_binding.set(subjectArg, newURI(solution.get(0)));
+            }
+            if (propertyArg.isVar()) {
+                new_binding.set(propertyArg, newURI(solution.get(1)));
+            }
+            return new_binding;
+        });
+    }
+
+    private AnnotationTextIndex getTextIndex() {
+        AnnotationTextIndex index = textIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = textIndex;
+                if (index == null) {
+                    index = new AnnotationTextIndex(unannotatedAxioms);
+                    textIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     private Collection<OWLAnnotationAssertionAxiom> getAnnotationAssertionAxiomsForBoundSubject(QueryArgument subjectArg) {
         return annotationAssertionsBySubject.get(subjectArg.getValueAsIRI());
     }
@@ -1529,14 +1679,13 @@ public class QueryEngineImpl extends QueryEngine {
         return rootOntology.getOWLOntologyManager().getImportsClosure(rootOntology);
     }
 
-    private boolean checkArgs(QueryAtom atom)
+    private boolean checkArgs(AtomTemplate atom, QueryBindingImpl binding)
             throws QueryEngineException {
-        List<QueryArgument> args = atom.getArguments();
         QueryArgument arg0, arg1, arg2;
 
         switch (atom.getType()) {
             case CLASS:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Class().");
                 }
@@ -1545,7 +1694,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case INDIVIDUAL:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Individual().");
                 }
@@ -1554,8 +1703,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case TYPE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom Type().");
                 }
@@ -1570,8 +1719,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DIRECT_TYPE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom DirectType().");
                 }
@@ -1588,9 +1737,9 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case PROPERTY_VALUE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                arg2 = args.get(2);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                arg2 = atom.get(2, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom PropertyValue().");
                 }
@@ -1626,8 +1775,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case SAME_AS:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom SameAs().");
                 }
@@ -1644,8 +1793,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DIFFERENT_FROM:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom DifferentFrom().");
                 }
@@ -1662,8 +1811,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom SubClassOf().");
                 }
@@ -1679,8 +1828,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DIRECT_SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom DirectSubClassOf().");
@@ -1699,8 +1848,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case STRICT_SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom StrictSubClassOf().");
@@ -1719,8 +1868,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case EQUIVALENT_CLASS:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom EquivalentClass().");
@@ -1739,8 +1888,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DISJOINT_WITH:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom DisjointWith().");
                 }
@@ -1757,8 +1906,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case COMPLEMENT_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom ComplementOf().");
                 }
@@ -1775,8 +1924,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom SubPropertyOf().");
                 }
@@ -1794,8 +1943,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case STRICT_SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom StrictSubPropertyOf().");
@@ -1814,8 +1963,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DIRECT_SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom DirectSubPropertyOf().");
@@ -1834,8 +1983,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case EQUIVALENT_PROPERTY:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException(
                             "Expected URI or variable in first argument of atom EquivalentProperty().");
@@ -1854,8 +2003,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case INVERSE_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom InverseOf().");
                 }
@@ -1872,7 +2021,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case OBJECT_PROPERTY:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom ObjectProperty().");
                 }
@@ -1881,7 +2030,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case INVERSE_FUNCTIONAL:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom InverseFunctional().");
                 }
@@ -1890,7 +2039,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case SYMMETRIC:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Symmetric().");
                 }
@@ -1899,7 +2048,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case TRANSITIVE:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Transitive().");
                 }
@@ -1908,7 +2057,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case REFLEXIVE:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Reflexive().");
                 }
@@ -1917,7 +2066,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case IRREFLEXIVE:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Irreflexive().");
                 }
@@ -1926,7 +2075,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case DATA_PROPERTY:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom DataProperty().");
                 }
@@ -1935,7 +2084,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case ANNOTATION_PROPERTY:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI of variable in atom AnnotationProperty().");
                 }
@@ -1945,7 +2094,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case PROPERTY:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Property().");
                 }
@@ -1954,7 +2103,7 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case FUNCTIONAL:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in atom Functional().");
                 }
@@ -1963,8 +2112,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case ANNOTATION:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom Annotation().");
                 }
@@ -1981,9 +2130,32 @@ public class QueryEngineImpl extends QueryEngine {
                             "Given entity in second argument of atom Annotation() is not an annotation property.");
                 }
                 return true;
+            case TEXT_MATCH:
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                arg2 = atom.get(2, binding);
+                if (!arg0.isURI() && !arg0.isVar()) {
+                    throw new QueryEngineException("Expected URI or variable in first argument of atom TextMatch().");
+                }
+                if (arg0.isURI() && !isDeclaredIndividual(arg0) && !isDeclaredDataProperty(arg0) && !isDeclaredObjectProperty(
+                        arg0) && !isDeclaredClass(arg0) && !isDeclaredAnnotationProperty(arg0)) {
+                    throw new QueryEngineException(
+                            "Given entity in first argument of atom TextMatch() is not a declared entity whose annotations the literal search string can match.");
+                }
+                if (!arg1.isURI() && !arg1.isVar()) {
+                    throw new QueryEngineException("Expected URI or variable in second argument of atom TextMatch().");
+                }
+                if (arg1.isURI() && !isDeclaredAnnotationProperty(arg1)) {
+                    throw new QueryEngineException(
+                            "Given entity in second argument of atom TextMatch() is not an annotation property, whose literal values are searched.");
+                }
+                if (!arg2.isLiteral()) {
+                    throw new QueryEngineException("Expected a literal search string in third argument of atom TextMatch().");
+                }
+                return true;
             case DOMAIN:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom Domain().");
                 }
@@ -2000,8 +2172,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return true;
             case RANGE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 if (!arg0.isURI() && !arg0.isVar()) {
                     throw new QueryEngineException("Expected URI or variable in first argument of atom Range().");
                 }
@@ -2023,42 +2195,253 @@ public class QueryEngineImpl extends QueryEngine {
         }
     }
 
+    private boolean isInstance(OWLNamedIndividual ind, OWLClass cls) {
+        OWLClassAssertionAxiom ax = factory.getOWLClassAssertionAxiom(cls, ind);
+        return reasoner.getRootOntology()
+                       .containsAxiom(ax,
+                                      Imports.INCLUDED,
+                                      AxiomAnnotations.CONSIDER_AXIOM_ANNOTATIONS)
+                || reasoner.isEntailed(ax);
+    }
+
+    private boolean isDirectInstance(OWLNamedIndividual ind, OWLClass cls) {
+        return reasoner.getTypes(ind, true).containsEntity(cls);
+    }
+
+    /**
+     * Evaluates an atom for a block of bindings with lookups that serve the whole block: Type and DirectType
+     * atoms with a bound individual are checked against the instances of the class, and PropertyValue atoms
+     * with a bound subject and an unbound value take the values of the subjects without checking every
+     * value on its own.  Other atoms, and bindings for which the atom does not have this shape, are left
+     * out and have to be evaluated binding by binding.
+     *
+     * @param bindings  A binding for every distinct key of the atom, see {@link AtomTemplate#key}.
+     * @param solutions Receives the solutions of the evaluated bindings by key, as the values of the
+     *                  variables of the atom (see {@link AtomTemplate#values}).
+     */
+    void evalBlock(AtomTemplate atom,
+                   Map<List<QueryArgument>, QueryBindingImpl> bindings,
+                   Map<List<QueryArgument>, List<QueryArgument[]>> solutions) throws QueryEngineException {
+        switch (atom.getType()) {
+            case TYPE:
+            case DIRECT_TYPE:
+                evalTypeBlock(atom, bindings, solutions);
+                break;
+            case PROPERTY_VALUE:
+                evalPropertyValueBlock(atom, bindings, solutions);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void evalTypeBlock(AtomTemplate atom,
+                               Map<List<QueryArgument>, QueryBindingImpl> bindings,
+                               Map<List<QueryArgument>, List<QueryArgument[]>> solutions)
+            throws QueryEngineException {
+        boolean direct = atom.getType() == QueryAtomType.DIRECT_TYPE;
+        InstanceIndex index = null;
+        for (Map.Entry<List<QueryArgument>, QueryBindingImpl> entry : bindings.entrySet()) {
+            QueryBindingImpl binding = entry.getValue();
+            QueryArgument indArg = atom.get(0, binding);
+            QueryArgument clsArg = atom.get(1, binding);
+            if (!indArg.isURI() || !clsArg.isURI()) {
+                continue;
+            }
+            if (!isWellFormed(atom, binding)) {
+                solutions.put(entry.getKey(), Collections.emptyList());
+                continue;
+            }
+            OWLClass cls = asClass(clsArg);
+            if (index == null) {
+                index = getInstanceIndex();
+            }
+            // loading the instances only pays off if there are about as many checks as instances
+            if (!index.isLoaded(cls, direct) && statistics.instances(cls.getIRI()) > bindings.size()) {
+                continue;
+            }
+            solutions.put(entry.getKey(), index.isInstance(cls, direct, asIndividual(indArg))
+                    ? Collections.singletonList(new QueryArgument[atom.size()])
+                    : Collections.emptyList());
+        }
+    }
+
+    private void evalPropertyValueBlock(AtomTemplate atom,
+                                        Map<List<QueryArgument>, QueryBindingImpl> bindings,
+                                        Map<List<QueryArgument>, List<QueryArgument[]>> solutions)
+            throws QueryEngineException {
+        Map<OWLObjectProperty, PropertyValueIndex.PropertyValues> lists = new HashMap<>();
+        for (Map.Entry<List<QueryArgument>, QueryBindingImpl> entry : bindings.entrySet()) {
+            QueryBindingImpl binding = entry.getValue();
+            QueryArgument subjectArg = atom.get(0, binding);
+            QueryArgument propertyArg = atom.get(1, binding);
+            QueryArgument valueArg = atom.get(2, binding);
+            if (!subjectArg.isURI()
+                    || !propertyArg.isURI()
+                    || !valueArg.isVar()
+                    || !isDeclared(asObjectProperty(propertyArg))) {
+                continue;
+            }
+            if (!isWellFormed(atom, binding)) {
+                solutions.put(entry.getKey(), Collections.emptyList());
+                continue;
+            }
+            OWLObjectProperty property = asObjectProperty(propertyArg);
+            OWLNamedIndividual subject = asIndividual(subjectArg);
+            // the values of the reasoner (or the asserted values without inference) satisfy the atom, there is
+            // no need to check them one by one
+            Collection<OWLNamedIndividual> values = propertyValueIndex.isInference()
+                    ? reasoner.getObjectPropertyValues(subject, property).getFlattened()
+                    : lists.computeIfAbsent(property, propertyValueIndex::get).getValues(subject);
+            List<QueryArgument[]> result = new ArrayList<>(values.size());
+            for (OWLNamedIndividual value : values) {
+                QueryArgument valueURI = newURI(value.getIRI());
+                if (performArgumentChecking && !isDeclaredIndividual(valueURI)) {
+                    if (strictMode) {
+                        throw new QueryEngineException(
+                                "Given entity in third argument of atom PropertyValue() is not an individual.");
+                    }
+                    continue;
+                }
+                QueryArgument[] solution = new QueryArgument[atom.size()];
+                solution[2] = valueURI;
+                result.add(solution);
+            }
+            solutions.put(entry.getKey(), result);
+        }
+    }
+
+    /**
+     * Computes the solutions of a conjunction of Type and DirectType atoms with the same individual and
+     * constant classes.  If the individual is a variable, the instances of all classes are intersected,
+     * otherwise the atoms are checked one by one.
+     *
+     * @param atoms   The atoms.  The classes must be URIs.
+     * @param binding The binding the arguments of the atoms are resolved with.
+     * @return The bindings that satisfy all atoms.  Bindings of the individual still have to be checked
+     * with {@link #isWellFormed(AtomTemplate, QueryBindingImpl)}.
+     */
+    Iterator<QueryBindingImpl> evalInstances(List<AtomTemplate> atoms, QueryBindingImpl binding)
+            throws QueryEngineException {
+        for (AtomTemplate atom : atoms) {
+            if (!isWellFormed(atom, binding)) {
+                return Collections.emptyIterator();
+            }
+        }
+        QueryArgument indArg = atoms.get(0).get(0, binding);
+        if (!indArg.isVar()) {
+            for (AtomTemplate atom : atoms) {
+                if (!checkBound(atom, binding)) {
+                    return Collections.emptyIterator();
+                }
+            }
+            return Iterators.singletonIterator(binding);
+        }
+        InstanceIndex index = getInstanceIndex();
+        BitSet instances = null;
+        for (AtomTemplate atom : atoms) {
+            BitSet bits = index.getInstances(asClass(atom.get(1, binding)),
+                                             atom.getType() == QueryAtomType.DIRECT_TYPE);
+            if (instances == null) {
+                instances = (BitSet) bits.clone();
+            }
+            else {
+                instances.and(bits);
+            }
+        }
+        BitSet result = instances;
+        return new AbstractIterator<QueryBindingImpl>() {
+
+            private int next = result.nextSetBit(0);
+
+            @Override
+            protected QueryBindingImpl computeNext() {
+                if (next < 0) {
+                    return endOfData();
+                }
+                OWLNamedIndividual ind = index.getIndividual(next);
+                next = result.nextSetBit(next + 1);
+                return bind(binding, indArg, newURI(ind.getIRI()));
+            }
+        };
+    }
+
+    /**
+     * Get the instance index for the current results of the reasoner.  The instances of a class are the
+     * instances the reasoner enumerates that also pass the check of a bound atom, so the index gives the
+     * same answers as the evaluation of the atoms one by one.  While the reasoner has pending changes,
+     * the index is used for a single evaluation and not kept.
+     */
+    private InstanceIndex getInstanceIndex() {
+        long version = cachingReasoner.version();
+        InstanceIndex index = instanceIndex;
+        if (index == null || version < 0 || index.getVersion() != version) {
+            // the instances of the reasoner are trusted like the candidates of a type atom, checking them one by
+            // one would cost a reasoner call per instance
+            index = new InstanceIndex(version, (cls, direct) -> reasoner.getInstances(cls, direct).getFlattened());
+            if (version >= 0) {
+                instanceIndex = index;
+            }
+        }
+        return index;
+    }
+
     /**
-     * Determines if the specified binding is actually entailed by the ontology
+     * Determines if the specified binding is actually entailed by the ontology.  The results are cached
+     * per ground atom, as the same ground atom is often checked for many solutions of unrelated variables.
      *
-     * @param atom The atom to check.
+     * @param atom    The atom to check.
+     * @param binding The binding that binds all variables of the atom.
      * @return true if the binding is entailed by the ontology, otherwise false
      */
-    private boolean checkBound(@Nonnull QueryAtom atom) {
-        List<QueryArgument> args = atom.getArguments();
+    boolean checkBound(@Nonnull AtomTemplate atom, @Nonnull QueryBindingImpl binding) {
+        Cache<List<Object>, Boolean> cache = entailmentCache;
+        long version = cachingReasoner.version();
+        if (cache == null || version < 0) {
+            return isEntailed(atom, binding);
+        }
+        if (version != entailmentCacheVersion) {
+            synchronized (cache) {
+                // the entries of older versions can never be hit again, a query that still runs on an
+                // older version only adds entries that are never hit
+                if (version > entailmentCacheVersion) {
+                    cache.invalidateAll();
+                    entailmentCacheVersion = version;
+                }
+            }
+        }
+        List<Object> key = Arrays.asList(version, atom.getType(), atom.key(binding));
+        Boolean entailed = cache.getIfPresent(key);
+        if (entailed == null) {
+            entailed = isEntailed(atom, binding);
+            cache.put(key, entailed);
+        }
+        return entailed;
+    }
 
+    private boolean isEntailed(AtomTemplate atom, QueryBindingImpl binding) {
         QueryArgument arg0, arg1, arg2;
 
         switch (atom.getType()) {
-            case TYPE: {
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                OWLNamedIndividual ind = asIndividual(arg0);
-                OWLClass cls = asClass(arg1);
-                OWLClassAssertionAxiom ax = factory.getOWLClassAssertionAxiom(cls, ind);
-                return reasoner.getRootOntology()
-                               .containsAxiom(ax,
-                                              Imports.INCLUDED,
-                                              AxiomAnnotations.CONSIDER_AXIOM_ANNOTATIONS)
-                        || reasoner.isEntailed(factory.getOWLClassAssertionAxiom(cls, ind));
-            }
+            case TYPE:
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                return isInstance(asIndividual(arg0), asClass(arg1));
             case DIRECT_TYPE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                return reasoner.getTypes(asIndividual(arg0), true).containsEntity(asClass(arg1));
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                return isDirectInstance(asIndividual(arg0), asClass(arg1));
             case PROPERTY_VALUE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                arg2 = args.get(2);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                arg2 = atom.get(2, binding);
                 if (arg2.isURI()) {
                     OWLNamedIndividual subject = asIndividual(arg0);
                     OWLObjectProperty property = asObjectProperty(arg1);
                     OWLNamedIndividual object = asIndividual(arg2);
+                    if (!propertyValueIndex.isInference()) {
+                        return propertyValueIndex.get(property).getValues(subject).contains(object);
+                    }
                     OWLObjectPropertyAssertionAxiom ax = factory.getOWLObjectPropertyAssertionAxiom(property,
                                                                                                     subject,
                                                                                                     object);
@@ -2084,57 +2467,59 @@ public class QueryEngineImpl extends QueryEngine {
                     return false;
                 }
                 return false;
-            case SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+            case SUB_CLASS_OF: {
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 OWLClass subCls = asClass(arg0);
                 if (subCls.isOWLNothing()) {
                     return true;
                 }
                 OWLClass superCls = asClass(arg1);
-                return superCls.isOWLThing()
-                        || reasoner.isEntailed(factory.getOWLSubClassOfAxiom(subCls, superCls));
+                if (superCls.isOWLThing()) {
+                    return true;
+                }
+                ClassHierarchyIndex hierarchy = getClassHierarchy(subCls, superCls);
+                if (hierarchy != null) {
+                    return hierarchy.isEquivalent(subCls, superCls) || hierarchy.isSubClassOf(subCls, superCls, false);
+                }
+                return reasoner.isEntailed(factory.getOWLSubClassOfAxiom(subCls, superCls));
+            }
             case STRICT_SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                return reasoner.getSubClasses(asClass(arg1), false).containsEntity(asClass(arg0));
-            case DIRECT_SUB_CLASS_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
-                return reasoner.getSubClasses(asClass(arg1), true).containsEntity(asClass(arg0));
+            case DIRECT_SUB_CLASS_OF: {
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                boolean direct = atom.getType() == QueryAtomType.DIRECT_SUB_CLASS_OF;
+                ClassHierarchyIndex hierarchy = getClassHierarchy(asClass(arg0), asClass(arg1));
+                if (hierarchy != null) {
+                    return hierarchy.isSubClassOf(asClass(arg0), asClass(arg1), direct);
+                }
+                return reasoner.getSubClasses(asClass(arg1), direct).containsEntity(asClass(arg0));
+            }
             case EQUIVALENT_CLASS:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 return reasoner.getEquivalentClasses(asClass(arg0)).contains(asClass(arg1));
             case FUNCTIONAL:
-                arg0 = args.get(0);
+                arg0 = atom.get(0, binding);
                 OWLObjectProperty functional_op = asObjectProperty(arg0);
                 OWLDataProperty functional_dp = asDataProperty(arg0);
                 if (isDeclared(functional_op)) {
-                    return reasoner.isEntailed(factory.getOWLFunctionalObjectPropertyAxiom(functional_op));
+                    return getPropertyCharacteristics().has(QueryAtomType.FUNCTIONAL, functional_op);
                 }
                 else if (isDeclared(functional_dp)) {
-                    return reasoner.isEntailed(factory.getOWLFunctionalDataPropertyAxiom(functional_dp));
+                    return getPropertyCharacteristics().isFunctional(functional_dp);
                 }
                 return false;
             case INVERSE_FUNCTIONAL:
-                arg0 = args.get(0);
-                return reasoner.isEntailed(factory.getOWLInverseFunctionalObjectPropertyAxiom(asObjectProperty(arg0)));
             case TRANSITIVE:
-                arg0 = args.get(0);
-                return reasoner.isEntailed(factory.getOWLTransitiveObjectPropertyAxiom(asObjectProperty(arg0)));
             case SYMMETRIC:
-                arg0 = args.get(0);
-                return reasoner.isEntailed(factory.getOWLSymmetricObjectPropertyAxiom(asObjectProperty(arg0)));
             case REFLEXIVE:
-                arg0 = args.get(0);
-                return reasoner.isEntailed(factory.getOWLReflexiveObjectPropertyAxiom(asObjectProperty(arg0)));
             case IRREFLEXIVE:
-                arg0 = args.get(0);
-                return reasoner.isEntailed(factory.getOWLIrreflexiveObjectPropertyAxiom(asObjectProperty(arg0)));
+                arg0 = atom.get(0, binding);
+                return getPropertyCharacteristics().has(atom.getType(), asObjectProperty(arg0));
             case SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 OWLObjectProperty sub_prop_op0 = asObjectProperty(arg0);
                 OWLDataProperty sub_prop_dp0 = asDataProperty(arg0);
@@ -2150,8 +2535,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case STRICT_SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 OWLObjectProperty strict_sub_prop_op0 = asObjectProperty(arg0);
                 OWLDataProperty strict_sub_prop_dp0 = asDataProperty(arg0);
@@ -2166,8 +2551,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case DIRECT_SUB_PROPERTY_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 OWLObjectProperty direct_sub_prop_op0 = asObjectProperty(arg0);
                 OWLDataProperty direct_sub_prop_dp0 = asDataProperty(arg0);
@@ -2182,16 +2567,16 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case INVERSE_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 OWLObjectProperty inv_prop_op0 = asObjectProperty(arg0);
 
                 return isDeclared(inv_prop_op0) && reasoner.getInverseObjectProperties(inv_prop_op0)
                                                            .contains(asObjectProperty(arg1));
             case EQUIVALENT_PROPERTY:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 OWLObjectProperty equiv_prop_op0 = asObjectProperty(arg0);
                 OWLDataProperty equiv_prop_dp0 = asDataProperty(arg0);
@@ -2204,8 +2589,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case DOMAIN:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 OWLObjectProperty op_0 = asObjectProperty(arg0);
                 OWLDataProperty dp_0 = asDataProperty(arg0);
                 OWLAnnotationProperty ap_0 = asAnnotationProperty(arg0);
@@ -2232,8 +2617,8 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case RANGE:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
                 OWLObjectProperty rng_op_0 = asObjectProperty(arg0);
                 OWLDataProperty rng_dp_0 = asDataProperty(arg0);
                 OWLAnnotationProperty rng_ap_0 = asAnnotationProperty(arg0);
@@ -2262,30 +2647,38 @@ public class QueryEngineImpl extends QueryEngine {
                 }
                 return false;
             case SAME_AS:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 return reasoner.getSameIndividuals(asIndividual(arg0)).contains(asIndividual(arg1));
             case DIFFERENT_FROM:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 return reasoner.getDifferentIndividuals(asIndividual(arg0)).containsEntity(asIndividual(arg1));
             case DISJOINT_WITH:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 return reasoner.getDisjointClasses(asClass(arg0)).containsEntity(asClass(arg1));
             case COMPLEMENT_OF:
-                arg0 = args.get(0);
-                arg1 = args.get(1);
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
 
                 return reasoner.getEquivalentClasses(factory.getOWLObjectComplementOf(asClass(arg0)))
                                .contains(asClass(arg1));
+            case TEXT_MATCH:
+                arg0 = atom.get(0, binding);
+                arg1 = atom.get(1, binding);
+                arg2 = atom.get(2, binding);
+                return getTextIndex().search(arg2.getValueAsLiteral().getLiteral(),
+                                             arg2.getValueAsLiteral().getLang(),
+                                             arg1.getValueAsIRI(),
+                                             arg0.getValueAsIRI()).length > 0;
             case ANNOTATION:
-                arg0 = args.get(0); // Subject
-                arg1 = args.get(1); // Property
-                arg2 = args.get(2); // Object
+                arg0 = atom.get(0, binding); // Subject
+                arg1 = atom.get(1, binding); // Property
+                arg2 = atom.get(2, binding); // Object
                 OWLEntity anEntity = null;
                 OWLAnnotationProperty anProp = asAnnotationProperty(arg1);
                 final OWLAnnotationAssertionAxiom ax;
@@ -2347,84 +2740,28 @@ public class QueryEngineImpl extends QueryEngine {
 //                }
 //                return false;
             case CLASS:
-                return isDeclaredClass(args.get(0));
+                return isDeclaredClass(atom.get(0, binding));
             case INDIVIDUAL:
-                return isDeclaredIndividual(args.get(0));
+                return isDeclaredIndividual(atom.get(0, binding));
             case PROPERTY:
-                return isDeclaredObjectProperty(args.get(0)) || isDeclaredDataProperty(args.get(0));
+                return isDeclaredObjectProperty(atom.get(0, binding)) || isDeclaredDataProperty(atom.get(0, binding));
             case OBJECT_PROPERTY:
-                return isDeclaredObjectProperty(args.get(0));
+                return isDeclaredObjectProperty(atom.get(0, binding));
             case DATA_PROPERTY:
-                return isDeclaredDataProperty(args.get(0));
+                return isDeclaredDataProperty(atom.get(0, binding));
             case ANNOTATION_PROPERTY:
-                return isDeclaredAnnotationProperty(args.get(0));
+                return isDeclaredAnnotationProperty(atom.get(0, binding));
             default:
                 throw new RuntimeException("Unsupported or unknown atom type.");
         }
     }
 
-    private float estimateCost(QueryAtom atom) {
-        List<QueryArgument> args = atom.getArguments();
-
-        switch (atom.getType()) {
-            case TYPE:
-            case DIRECT_TYPE:
-            case PROPERTY_VALUE:
-            case SUB_CLASS_OF:
-            case STRICT_SUB_CLASS_OF:
-            case DIRECT_SUB_CLASS_OF:
-            case EQUIVALENT_CLASS:
-            case FUNCTIONAL:
-            case INVERSE_FUNCTIONAL:
-            case TRANSITIVE:
-            case SYMMETRIC:
-            case SUB_PROPERTY_OF:
-            case STRICT_SUB_PROPERTY_OF:
-            case DIRECT_SUB_PROPERTY_OF:
-            case EQUIVALENT_PROPERTY:
-            case DOMAIN:
-            case RANGE:
-            case CLASS:
-            case INDIVIDUAL:
-            case PROPERTY:
-            case OBJECT_PROPERTY:
-            case DATA_PROPERTY:
-            case ANNOTATION_PROPERTY:
-            case INVERSE_OF:
-            case REFLEXIVE:
-            case IRREFLEXIVE:
-            case SAME_AS:
-            case DISJOINT_WITH:
-            case DIFFERENT_FROM:
-            case COMPLEMENT_OF:
-            case ANNOTATION:
-                float cost = 0f;
-                for (QueryArgument arg : args) {
-                    if (arg.isVar()) {
-                        cost += 1f;
-                    }
-                }
-                return cost;
-            default:
-                return 1e25f;
-        }
-    }
-
+    /**
+     * Orders the atoms of a component by the estimated number of their solutions, see {@link CostModel}.
+     */
     private QueryAtomGroupImpl preorder(QueryAtomGroupImpl group) {
-        List<QueryAtom> atoms = new LinkedList<>();
-        atoms.addAll(group.getAtoms());
-        Collections.sort(atoms, (a1, a2) -> {
-            float c1 = QueryEngineImpl.this.estimateCost(a1);
-            float c2 = QueryEngineImpl.this.estimateCost(a2);
-
-            if (c1 == c2) {
-                return 0;
-            }
-            return (c1 < c2) ? -1 : +1;
-        });
-
         QueryAtomGroupImpl ret = new QueryAtomGroupImpl();
-        atoms.forEach(ret::addAtom);
+        costModel.order(group.getAtoms()).forEach(ret::addAtom);
         return ret;
     }
 
@@ -2457,30 +2794,106 @@ public class QueryEngineImpl extends QueryEngine {
         return manager.getOWLDataFactory().getOWLAnnotationProperty(arg.getValueAsIRI());
     }
 
+    /**
+     * Get the snapshot of the class hierarchy, taking a new one if the schema has changed or the signature
+     * has gained classes.
+     *
+     * @return The snapshot or null if the reasoner has pending changes or one of the classes is not in the
+     * hierarchy, so the reasoner has to be asked directly.
+     */
+    @Nullable
+    private ClassHierarchyIndex getClassHierarchy(OWLClass... classes) {
+        long version = cachingReasoner.schemaVersion();
+        if (version < 0) {
+            return null;
+        }
+        Set<OWLClass> signature = getClasses();
+        ClassHierarchyIndex hierarchy = classHierarchy;
+        if (hierarchy == null || hierarchy.getVersion() != version || !hierarchy.covers(signature)) {
+            synchronized (classHierarchyLock) {
+                hierarchy = classHierarchy;
+                if (hierarchy == null || hierarchy.getVersion() != version || !hierarchy.covers(signature)) {
+                    hierarchy = new ClassHierarchyIndex(cachingReasoner, version, signature);
+                    classHierarchy = hierarchy;
+                }
+            }
+        }
+        for (OWLClass cls : classes) {
+            if (!hierarchy.contains(cls)) {
+                return null;
+            }
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Get the property characteristics for the current results of the reasoner.  While the reasoner has
+     * pending changes, the characteristics are computed for a single evaluation and not kept, and tests
+     * of single properties go to the reasoner directly.
+     */
+    private PropertyCharacteristics getPropertyCharacteristics() {
+        long version = cachingReasoner.version();
+        PropertyCharacteristics characteristics = propertyCharacteristics;
+        if (characteristics == null || version < 0 || characteristics.getVersion() != version) {
+            characteristics = new PropertyCharacteristics(reasoner, factory, version, getObjectProperties(),
+                                                          getDataProperties());
+            if (version >= 0) {
+                propertyCharacteristics = characteristics;
+            }
+        }
+        return characteristics;
+    }
+
+    private void entitiesChanged(Set<OWLEntity> entities) {
+        SignatureSnapshot snapshot = signature;
+        // without a copy, the signature is copied again anyway
+        if (snapshot != null && snapshot.update(entities)) {
+            clearPlanCache();
+        }
+    }
+
+    private void signatureChanged() {
+        synchronized (this) {
+            signature = null;
+        }
+        clearPlanCache();
+    }
+
+    /**
+     * Get the copy of the signature, taking a new one if the imports closure has changed.
+     */
+    private SignatureSnapshot getSignature() {
+        SignatureSnapshot snapshot = signature;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = signature;
+                if (snapshot == null) {
+                    snapshot = new SignatureSnapshot(reasoner.getRootOntology(), factory);
+                    signature = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
     private Set<OWLClass> getClasses() {
-        return classes;
+        return getSignature().getClasses();
     }
 
     private Set<OWLNamedIndividual> getIndividuals() {
-        return reasoner.getRootOntology().getIndividualsInSignature(Imports.INCLUDED);
+        return getSignature().getIndividuals();
     }
 
     private Set<OWLObjectProperty> getObjectProperties() {
-        return reasoner.getRootOntology().getObjectPropertiesInSignature(Imports.INCLUDED);
+        return getSignature().getObjectProperties();
     }
 
     private Set<OWLDataProperty> getDataProperties() {
-        return reasoner.getRootOntology().getDataPropertiesInSignature(Imports.INCLUDED);
+        return getSignature().getDataProperties();
     }
 
     private Set<OWLAnnotationProperty> getAnnotationProperties() {
-        if (!cachedAnnotationProperties.isEmpty()) {
-            return cachedAnnotationProperties;
-        }
-        for (OWLOntology o : getImportsClosure()) {
-            cachedAnnotationProperties.addAll(o.getAnnotationPropertiesInSignature());
-        }
-        return cachedAnnotationProperties;
+        return getSignature().getAnnotationProperties();
     }
 
     private boolean isDeclaredIndividual(QueryArgument arg) {
@@ -2488,7 +2901,7 @@ public class QueryEngineImpl extends QueryEngine {
     }
 
     private boolean isDeclaredClass(QueryArgument arg) {
-        return classIris.contains(arg.getValueAsIRI());
+        return getSignature().isDeclared(arg.getValueAsIRI(), EntityKindMap.CLASS);
     }
 
     private boolean isDeclaredObjectProperty(QueryArgument arg) {
@@ -2500,7 +2913,7 @@ public class QueryEngineImpl extends QueryEngine {
     }
 
     private boolean isDeclaredAnnotationProperty(QueryArgument arg) {
-        return annotationPropertyIris.contains(arg.getValueAsIRI());
+        return getSignature().isDeclared(arg.getValueAsIRI(), EntityKindMap.ANNOTATION_PROPERTY);
     }
 
     private boolean isDeclaredDatatype(QueryArgument arg) {
@@ -2508,23 +2921,23 @@ public class QueryEngineImpl extends QueryEngine {
     }
 
     private boolean isDeclared(OWLNamedIndividual i) {
-        return i.isBuiltIn() || reasoner.getRootOntology().containsIndividualInSignature(i.getIRI(), Imports.INCLUDED);
+        return i.isBuiltIn() || getSignature().isDeclared(i.getIRI(), EntityKindMap.INDIVIDUAL);
     }
 
 
     private boolean isDeclared(OWLObjectProperty p) {
-        return p.isBuiltIn() || reasoner.getRootOntology().containsObjectPropertyInSignature(p.getIRI(), Imports.INCLUDED);
+        return p.isBuiltIn() || getSignature().isDeclared(p.getIRI(), EntityKindMap.OBJECT_PROPERTY);
     }
 
     private boolean isDeclared(OWLDataProperty p) {
-        return p.isBuiltIn() || reasoner.getRootOntology().containsDataPropertyInSignature(p.getIRI(), Imports.INCLUDED);
+        return p.isBuiltIn() || getSignature().isDeclared(p.getIRI(), EntityKindMap.DATA_PROPERTY);
     }
 
     private boolean isDeclared(OWLAnnotationProperty p) {
-        return p.isBuiltIn() || reasoner.getRootOntology().containsAnnotationPropertyInSignature(p.getIRI(), Imports.INCLUDED);
+        return p.isBuiltIn() || getSignature().isDeclared(p.getIRI(), EntityKindMap.ANNOTATION_PROPERTY);
     }
 
     private boolean isDeclared(OWLDatatype d) {
-        return d.isBuiltIn() || reasoner.getRootOntology().containsDatatypeInSignature(d.getIRI(), Imports.INCLUDED);
+        return d.isBuiltIn() || getSignature().isDeclared(d.getIRI(), EntityKindMap.DATATYPE);
     }
 }
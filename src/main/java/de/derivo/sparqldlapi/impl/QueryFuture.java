@@ -0,0 +1,70 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryBinding;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The future of a query that is executed asynchronously.  The operators of the query are created with the
+ * cancellation token of the future, and cancelling the future cancels the token, so the evaluation stops at
+ * the next candidate solution in every thread that takes part in it (tasks of the executor of the engine or
+ * of its fork-join pool).  No thread is interrupted.
+ */
+class QueryFuture<T> extends CompletableFuture<T> implements Runnable {
+
+    interface Evaluation<T> {
+
+        T run(QueryFuture<T> future) throws QueryEngineException;
+    }
+
+    private final Evaluation<T> evaluation;
+
+    private final Cancellation cancellation = new Cancellation();
+
+    QueryFuture(Evaluation<T> evaluation) {
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Get the token the operators of the query are created with.
+     */
+    Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Pass a solution to a callback unless the future has been cancelled.  Cancelling the future waits for a
+     * callback that is running, so no solution is passed to the callback after the future has been cancelled.
+     *
+     * @return False if the future has been cancelled.
+     */
+    synchronized boolean deliver(Consumer<QueryBinding> callback, QueryBinding binding) {
+        if (isCancelled()) {
+            return false;
+        }
+        callback.accept(binding);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        if (isDone()) {
+            // cancelled before it has been started
+            return;
+        }
+        try {
+            complete(evaluation.run(this));
+        } catch (Throwable t) {
+            completeExceptionally(t);
+        }
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        cancellation.cancel();
+        return cancelled;
+    }
+}
@@ -6,7 +6,7 @@ package de.derivo.sparqldlapi.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -26,12 +26,16 @@ public class QueryImpl extends Query
 	private QueryType type;
 	private List<QueryAtomGroup> groups;
 	private Set<QueryArgument> resultVars;
+	private VarTable vars;
+	private int limit = -1;
+	private int offset = 0;
 	
 	public QueryImpl(QueryType type)
 	{
 		this.type = type;
 		groups = new ArrayList<QueryAtomGroup>();
-		resultVars = new HashSet<QueryArgument>();
+		resultVars = new LinkedHashSet<QueryArgument>();
+		vars = new VarTable();
 	}
 	
 	/**
@@ -53,9 +57,32 @@ public class QueryImpl extends Query
 	{
 		if(arg.getType() == QueryArgumentType.VAR) {
 			resultVars.add(arg);
+			vars.add(arg);
 		}
 	}
 	
+	/**
+	 * Register a variable of the query, so it gets a slot in the bindings of the query.
+	 * 
+	 * @param arg QueryArgument has to be a variable.
+	 */
+	public void addVar(QueryArgument arg)
+	{
+		if(arg.getType() == QueryArgumentType.VAR) {
+			vars.add(arg);
+		}
+	}
+	
+	/**
+	 * Get the table that assigns the slots of the variables of the query.
+	 * 
+	 * @return
+	 */
+	public VarTable getVarTable()
+	{
+		return vars;
+	}
+	
 	/**
 	 * Remove a result variable from the query.
 	 * 
@@ -182,6 +209,46 @@ public class QueryImpl extends Query
 		return type == QueryType.SELECT_DISTINCT;
 	}
 	
+	/**
+	 * Set the maximum number of solutions of the query.
+	 * 
+	 * @param limit The limit or -1 if the number of solutions should not be limited.
+	 */
+	public void setLimit(int limit)
+	{
+		this.limit = limit;
+	}
+	
+	/**
+	 * Get the maximum number of solutions (LIMIT) of the query.
+	 * 
+	 * @return The limit or -1 if the number of solutions is not limited.
+	 */
+	public int getLimit()
+	{
+		return limit;
+	}
+	
+	/**
+	 * Set the number of solutions that are skipped before solutions are returned.
+	 * 
+	 * @param offset
+	 */
+	public void setOffset(int offset)
+	{
+		this.offset = offset;
+	}
+	
+	/**
+	 * Get the number of solutions that are skipped (OFFSET) before solutions are returned.
+	 * 
+	 * @return The offset, 0 if no offset has been specified.
+	 */
+	public int getOffset()
+	{
+		return offset;
+	}
+	
 	/**
 	 * Print the SPARQL-DL query as string.
 	 * 
@@ -223,6 +290,16 @@ public class QueryImpl extends Query
 			sb.append(group);
 			sb.append(" }\n");
 		}
+		if(limit >= 0) {
+			sb.append("LIMIT ");
+			sb.append(limit);
+			sb.append('\n');
+		}
+		if(offset > 0) {
+			sb.append("OFFSET ");
+			sb.append(offset);
+			sb.append('\n');
+		}
 		return sb.toString();
 	}
 }
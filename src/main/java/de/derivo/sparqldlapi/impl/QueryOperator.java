@@ -0,0 +1,29 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+/**
+ * A node of the operator tree that the query engine builds for a query.
+ * Operators follow the classic iterator protocol: after {@link #open()} solutions
+ * are pulled one at a time with {@link #next()} until it returns null, and
+ * {@link #close()} releases any state that is still held.
+ */
+public interface QueryOperator {
+
+    /**
+     * Prepare the operator (and its inputs) for producing solutions.
+     */
+    void open() throws QueryEngineException;
+
+    /**
+     * Compute the next solution.
+     *
+     * @return The next binding or null if there are no more solutions.
+     */
+    QueryBindingImpl next() throws QueryEngineException;
+
+    /**
+     * Release the operator (and its inputs).  No solutions can be pulled afterwards.
+     */
+    void close();
+}
@@ -143,6 +143,9 @@ public class QueryParserImpl implements QueryParser
 		// parse optional union groups
 		parseOrWheres();
 		
+		// parse optional LIMIT and OFFSET
+		parseSolutionModifiers();
+		
 		if(fetchResultVars) {
 			for(QueryAtomGroup group : query.getAtomGroups()) {
 				for(QueryAtom atom : group.getAtoms()) {
@@ -182,6 +185,9 @@ public class QueryParserImpl implements QueryParser
 		throws QueryParserException
 	{	
 		parseWhere();
+		
+		// parse optional union groups
+		parseOrWheres();
 	}
 	
 	private void parseWhere()
@@ -256,6 +262,49 @@ public class QueryParserImpl implements QueryParser
 		}
 	}
 	
+	private void parseSolutionModifiers()
+		throws QueryParserException
+	{
+		boolean limit = false, offset = false;
+		while(pos < tokens.size()) {
+			QueryToken modifier = tokens.get(pos);
+			if("limit".equalsIgnoreCase(modifier.getToken()) && !limit) {
+				pos++;
+				query.setLimit(parseNonNegativeInteger(modifier));
+				limit = true;
+			}
+			else if("offset".equalsIgnoreCase(modifier.getToken()) && !offset) {
+				pos++;
+				query.setOffset(parseNonNegativeInteger(modifier));
+				offset = true;
+			}
+			else {
+				break;
+			}
+		}
+	}
+	
+	private int parseNonNegativeInteger(QueryToken modifier)
+		throws QueryParserException
+	{
+		if(pos >= tokens.size()) {
+			throw new QueryParserException("Non-negative integer awaited after " + modifier.getToken() + ".", modifier);
+		}
+		QueryToken token = tokens.get(pos);
+		int value;
+		try {
+			value = Integer.parseInt(token.getToken());
+		}
+		catch(NumberFormatException e) {
+			throw new QueryParserException("Non-negative integer awaited after " + modifier.getToken() + ".", token);
+		}
+		if(value < 0) {
+			throw new QueryParserException("Non-negative integer awaited after " + modifier.getToken() + ".", token);
+		}
+		pos++;
+		return value;
+	}
+	
 	private void parseAtoms()
 		throws QueryParserException
 	{
@@ -316,6 +365,15 @@ public class QueryParserImpl implements QueryParser
 			parseVariableBlankURILiteral();
 			parseParamsListClose();
 			break;
+		case TEXT_MATCH:
+			parseParamsListOpen();
+			parseVariableURI();
+			parseCommaDelim();
+			parseVariableURI();
+			parseCommaDelim();
+			parseLiteral();
+			parseParamsListClose();
+			break;
 		case SAME_AS:
 		case DIFFERENT_FROM:
 			parseParamsListOpen();
@@ -459,6 +517,20 @@ public class QueryParserImpl implements QueryParser
 		pos++;
 	}
 	
+	private void parseLiteral()
+		throws QueryParserException
+	{
+		QueryToken token = tokens.get(pos);
+		String tokenString = token.getToken();
+		if(isLiteral(tokenString)) {
+			appendLiteral(tokenString);
+		}
+		else {
+			throw new QueryParserException("Literal awaited as parameter in SPARQL-DL query.", token);
+		}
+		pos++;
+	}
+	
 	@SuppressWarnings("unused")
 	private void parseURI()
 		throws QueryParserException
@@ -528,7 +600,9 @@ public class QueryParserImpl implements QueryParser
 	
 	private void appendVar(String s) 
 	{
-		currentArgs.add(QueryArgument.newVar(new Var(s.substring(1))));
+		QueryArgument arg = QueryArgument.newVar(new Var(s.substring(1)));
+		query.addVar(arg);
+		currentArgs.add(arg);
 	}
 	
 	private String uriWithPrefix(String s)
@@ -0,0 +1,210 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.QueryAtom;
+import de.derivo.sparqldlapi.QueryAtomGroup;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The compiled form of a query: the split of its groups into components, the order of the atoms of every
+ * component and the way they are joined.  Operators keep the state of an evaluation, so a plan is not an
+ * operator tree itself but creates a fresh one for every evaluation.  A plan does not depend on the query
+ * object it has been compiled from, so it can be cached and reused for equal queries.
+ */
+class QueryPlan {
+
+    /**
+     * Creates the operators of one step of a component for an evaluation.
+     */
+    interface Step {
+
+        /**
+         * @param input        The operator of the steps before this one.
+         * @param cancellation The token the operators of the step stop at.
+         */
+        QueryOperator apply(QueryOperator input, Cancellation cancellation);
+    }
+
+    /**
+     * A component of a group.  Every step adds one atom (or all atoms, in adaptive mode) on top of the
+     * operators created for the steps before it.
+     */
+    static final class Component {
+
+        private final List<Step> steps = new ArrayList<>();
+
+        void addStep(Step step) {
+            steps.add(step);
+        }
+
+        /**
+         * Evaluate the steps after the first one in parallel, see {@link ParallelOperator}.  A component
+         * with a single step is left as it is.
+         */
+        void parallelize(ForkJoinPool pool) {
+            if (steps.size() > 1) {
+                List<Step> all = new ArrayList<>(steps);
+                steps.clear();
+                steps.add((input, cancellation) -> new ParallelOperator(all.get(0).apply(input, cancellation),
+                                                                        all.subList(1, all.size()), pool,
+                                                                        cancellation));
+            }
+        }
+    }
+
+    private final VarTable vars;
+
+    private final List<List<Component>> groups = new ArrayList<>();
+
+    private final Set<QueryArgument> resultVars;
+
+    private final boolean distinct;
+
+    private final int offset;
+
+    private final int limit;
+
+    private long changes;
+
+    private int size;
+
+    /**
+     * @param resultVars The variables the solutions are projected to or null if the solutions are not
+     *                   looked at (ASK queries).
+     */
+    QueryPlan(VarTable vars, Set<QueryArgument> resultVars, boolean distinct, int offset, int limit) {
+        this.vars = vars;
+        this.resultVars = resultVars;
+        this.distinct = distinct;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Get the key of a query in the plan cache.  Queries with equal keys have the same plan.  The key
+     * is a normalized form of the query: prefixes are expanded and whitespace is irrelevant.
+     */
+    static String key(QueryImpl query) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.getType()).append(' ');
+        for (QueryArgument arg : query.getResultVars()) {
+            appendArgument(sb, arg);
+        }
+        for (QueryAtomGroup group : query.getAtomGroups()) {
+            sb.append('{');
+            for (QueryAtom atom : group.getAtoms()) {
+                sb.append(atom.getType()).append('(');
+                for (QueryArgument arg : atom.getArguments()) {
+                    appendArgument(sb, arg);
+                }
+                sb.append(')');
+            }
+            sb.append('}');
+        }
+        sb.append(query.getOffset()).append(' ').append(query.getLimit());
+        return sb.toString();
+    }
+
+    private static void appendArgument(StringBuilder sb, QueryArgument arg) {
+        sb.append(arg.getType());
+        appendString(sb, arg.getValueAsString());
+        if (arg.isLiteral()) {
+            appendString(sb, arg.getValueAsLiteral().getDatatype().getIRI().toString());
+            appendString(sb, arg.getValueAsLiteral().getLang());
+        }
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        // the length keeps the key unambiguous for values that contain separators
+        sb.append(s.length()).append(':').append(s);
+    }
+
+    /**
+     * Record the state of the statistics the atoms have been ordered and the joins have been chosen by.
+     *
+     * @param changes The number of changes of the statistics, see {@link OntologyStatistics#changes()}.
+     * @param size    The number of axioms the statistics are collected from.
+     */
+    void setStatistics(long changes, int size) {
+        this.changes = changes;
+        this.size = size;
+    }
+
+    /**
+     * Test whether the statistics have drifted too far from the ones the plan has been compiled with.
+     *
+     * @param changes The current number of changes of the statistics.
+     * @param ratio   The share of the axioms that may change before the plan is stale.
+     */
+    boolean isStale(long changes, double ratio) {
+        return changes - this.changes > size * ratio;
+    }
+
+    void addGroup(List<Component> components) {
+        groups.add(components);
+    }
+
+    /**
+     * Create the operator tree for an evaluation of the query.  The components of a group are combined
+     * with the cartesian product and the groups are combined with a union.  OFFSET and LIMIT are applied
+     * on top, so the evaluation stops as soon as enough solutions have been produced.  With an executor,
+     * every group gets a child token of the cancellation token, so the components of a group can be stopped
+     * without stopping the other groups.
+     *
+     * @param executor     The executor the groups and the components of every group are evaluated on
+     *                     concurrently, or null to evaluate them one after another.
+     * @param cancellation The token that stops the evaluation.
+     * @return The root of the operator tree.
+     */
+    QueryOperator instantiate(@Nullable Executor executor, Cancellation cancellation) {
+        Cancellation union = executor == null ? cancellation : cancellation.child();
+        List<QueryOperator> groupPlans = new ArrayList<>();
+        for (List<Component> group : groups) {
+            Cancellation groupCancellation = executor == null ? cancellation : union.child();
+            List<QueryOperator> componentPlans = new ArrayList<>();
+            for (Component component : group) {
+                QueryOperator componentPlan = new SingletonOperator(new QueryBindingImpl(vars));
+                for (Step step : component.steps) {
+                    componentPlan = step.apply(componentPlan, groupCancellation);
+                }
+                if (resultVars != null) {
+                    componentPlan = new ProjectOperator(componentPlan, resultVars);
+                }
+                componentPlans.add(componentPlan);
+            }
+            QueryOperator groupPlan = componentPlans.get(0);
+            if (executor != null && componentPlans.size() > 1) {
+                groupPlan = new ParallelProductOperator(componentPlans, executor, groupCancellation);
+            }
+            else {
+                for (int i = 1; i < componentPlans.size(); i++) {
+                    groupPlan = new ProductOperator(groupPlan, componentPlans.get(i));
+                }
+            }
+            groupPlans.add(groupPlan);
+        }
+
+        QueryOperator plan;
+        if (groupPlans.size() == 1) {
+            plan = groupPlans.get(0);
+        }
+        else {
+            plan = executor == null
+                   ? new UnionOperator(groupPlans)
+                   : new ParallelUnionOperator(groupPlans, executor, union);
+        }
+        if (distinct) {
+            plan = new DistinctOperator(plan);
+        }
+        if (resultVars != null && (offset > 0 || limit >= 0)) {
+            plan = new SliceOperator(plan, offset, limit);
+        }
+        return plan;
+    }
+}
@@ -5,9 +5,11 @@
 package de.derivo.sparqldlapi.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.jdom.Document;
 import org.jdom.Element;
@@ -86,11 +88,17 @@ public class QueryResultImpl implements QueryResult
 	 */
 	public Iterator<QueryBinding> iterator() 
 	{
-		List<QueryBinding> iBindings = new ArrayList<QueryBinding>();
-		for(QueryBindingImpl b : bindings) {
-			iBindings.add(b);
-		}
-		return iBindings.iterator();
+		return Collections.<QueryBinding>unmodifiableList(bindings).iterator();
+	}
+	
+	/**
+	 * A sequential stream over the result set.
+	 * 
+	 * @return
+	 */
+	public Stream<QueryBinding> stream()
+	{
+		return Collections.<QueryBinding>unmodifiableList(bindings).stream();
 	}
 	
 	public List<QueryBindingImpl> getBindings() 
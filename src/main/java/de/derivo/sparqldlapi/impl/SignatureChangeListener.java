@@ -0,0 +1,62 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Notifies about changes of the signature of an ontology and its imports closure.  Once a batch of changes
+ * has been applied, the entities of all axioms that have been added or removed are passed on together, as
+ * only these entities can have entered or left the signature.  Any other change of an ontology of the
+ * imports closure, like a change of the imports, is passed on as a change of the whole signature.
+ */
+class SignatureChangeListener implements OWLOntologyChangeListener {
+
+    private final OWLOntology rootOntology;
+
+    private final Consumer<Set<OWLEntity>> onAxiomChanges;
+
+    private final Runnable onOtherChanges;
+
+    /**
+     * @param onAxiomChanges Receives the entities of the axioms that have been added or removed.
+     * @param onOtherChanges Is run instead if the batch contains changes other than axiom changes.
+     */
+    SignatureChangeListener(OWLOntology rootOntology,
+                            Consumer<Set<OWLEntity>> onAxiomChanges,
+                            Runnable onOtherChanges) {
+        this.rootOntology = rootOntology;
+        this.onAxiomChanges = onAxiomChanges;
+        this.onOtherChanges = onOtherChanges;
+    }
+
+    void register() {
+        rootOntology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    void unregister() {
+        rootOntology.getOWLOntologyManager().removeOntologyChangeListener(this);
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> importsClosure = rootOntology.getImportsClosure();
+        Set<OWLEntity> entities = new HashSet<>();
+        for (OWLOntologyChange change : changes) {
+            if (!importsClosure.contains(change.getOntology())) {
+                continue;
+            }
+            if (!change.isAxiomChange()) {
+                onOtherChanges.run();
+                return;
+            }
+            entities.addAll(change.getAxiom().getSignature());
+        }
+        if (!entities.isEmpty()) {
+            onAxiomChanges.accept(entities);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package de.derivo.sparqldlapi.impl;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A copy of the signature of an ontology and its imports closure.  The copy is taken once and kept up to date
+ * with the entities of the axioms that are added or removed (see {@link #update(Collection)}), so a change of
+ * the ontology never walks the whole signature again.  The sets of the entities of a kind are concurrent, so
+ * they can be enumerated without copying while they are updated, and the kinds of entities an IRI denotes
+ * are looked up with a single probe.  owl:Thing and owl:Nothing are always contained in the classes.
+ */
+class SignatureSnapshot {
+
+    private final OWLOntology rootOntology;
+
+    private final Set<OWLClass> classes = ConcurrentHashMap.newKeySet();
+
+    private final Set<OWLNamedIndividual> individuals = ConcurrentHashMap.newKeySet();
+
+    private final Set<OWLObjectProperty> objectProperties = ConcurrentHashMap.newKeySet();
+
+    private final Set<OWLDataProperty> dataProperties = ConcurrentHashMap.newKeySet();
+
+    private final Set<OWLAnnotationProperty> annotationProperties = ConcurrentHashMap.newKeySet();
+
+    private final Set<OWLDatatype> datatypes = ConcurrentHashMap.newKeySet();
+
+    private final EntityKindMap kinds = new EntityKindMap();
+
+    SignatureSnapshot(OWLOntology rootOntology, OWLDataFactory factory) {
+        this.rootOntology = rootOntology;
+        addAll(classes, rootOntology.getClassesInSignature(Imports.INCLUDED), EntityKindMap.CLASS);
+        add(classes, factory.getOWLThing(), EntityKindMap.CLASS);
+        add(classes, factory.getOWLNothing(), EntityKindMap.CLASS);
+        addAll(individuals, rootOntology.getIndividualsInSignature(Imports.INCLUDED), EntityKindMap.INDIVIDUAL);
+        addAll(objectProperties, rootOntology.getObjectPropertiesInSignature(Imports.INCLUDED),
+               EntityKindMap.OBJECT_PROPERTY);
+        addAll(dataProperties, rootOntology.getDataPropertiesInSignature(Imports.INCLUDED),
+               EntityKindMap.DATA_PROPERTY);
+        addAll(annotationProperties, rootOntology.getAnnotationPropertiesInSignature(Imports.INCLUDED),
+               EntityKindMap.ANNOTATION_PROPERTY);
+        addAll(datatypes, rootOntology.getDatatypesInSignature(Imports.INCLUDED), EntityKindMap.DATATYPE);
+    }
+
+    private <E extends OWLEntity> void addAll(Set<E> set, Set<E> entities, int kind) {
+        for (E entity : entities) {
+            add(set, entity, kind);
+        }
+    }
+
+    private <E extends OWLEntity> boolean add(Set<E> set, E entity, int kind) {
+        kinds.add(entity.getIRI(), kind);
+        return set.add(entity);
+    }
+
+    private <E extends OWLEntity> boolean remove(Set<E> set, E entity, int kind) {
+        kinds.remove(entity.getIRI(), kind);
+        return set.remove(entity);
+    }
+
+    /**
+     * Bring the copy up to date after axioms have been added to or removed from the ontology.  Only the
+     * entities of these axioms can have entered or left the signature, so each of them is looked up in the
+     * ontology once.  Changes of the imports closure are not covered, a new copy has to be taken for them.
+     *
+     * @param entities The entities of the added and removed axioms.
+     * @return Whether the signature has changed.
+     */
+    synchronized boolean update(Collection<OWLEntity> entities) {
+        boolean changed = false;
+        for (OWLEntity entity : entities) {
+            if (entity.isOWLClass() && (entity.asOWLClass().isOWLThing() || entity.asOWLClass().isOWLNothing())) {
+                continue;
+            }
+            if (rootOntology.containsEntityInSignature(entity, Imports.INCLUDED)) {
+                changed |= add(entity);
+            }
+            else {
+                changed |= remove(entity);
+            }
+        }
+        return changed;
+    }
+
+    private boolean add(OWLEntity entity) {
+        if (entity.isOWLClass()) {
+            return add(classes, entity.asOWLClass(), EntityKindMap.CLASS);
+        }
+        if (entity.isOWLNamedIndividual()) {
+            return add(individuals, entity.asOWLNamedIndividual(), EntityKindMap.INDIVIDUAL);
+        }
+        if (entity.isOWLObjectProperty()) {
+            return add(objectProperties, entity.asOWLObjectProperty(), EntityKindMap.OBJECT_PROPERTY);
+        }
+        if (entity.isOWLDataProperty()) {
+            return add(dataProperties, entity.asOWLDataProperty(), EntityKindMap.DATA_PROPERTY);
+        }
+        if (entity.isOWLAnnotationProperty()) {
+            return add(annotationProperties, entity.asOWLAnnotationProperty(), EntityKindMap.ANNOTATION_PROPERTY);
+        }
+        return add(datatypes, entity.asOWLDatatype(), EntityKindMap.DATATYPE);
+    }
+
+    private boolean remove(OWLEntity entity) {
+        if (entity.isOWLClass()) {
+            return remove(classes, entity.asOWLClass(), EntityKindMap.CLASS);
+        }
+        if (entity.isOWLNamedIndividual()) {
+            return remove(individuals, entity.asOWLNamedIndividual(), EntityKindMap.INDIVIDUAL);
+        }
+        if (entity.isOWLObjectProperty()) {
+            return remove(objectProperties, entity.asOWLObjectProperty(), EntityKindMap.OBJECT_PROPERTY);
+        }
+        if (entity.isOWLDataProperty()) {
+            return remove(dataProperties, entity.asOWLDataProperty(), EntityKindMap.DATA_PROPERTY);
+        }
+        if (entity.isOWLAnnotationProperty()) {
+            return remove(annotationProperties, entity.asOWLAnnotationProperty(), EntityKindMap.ANNOTATION_PROPERTY);
+        }
+        return remove(datatypes, entity.asOWLDatatype(), EntityKindMap.DATATYPE);
+    }
+
+    Set<OWLClass> getClasses() {
+        return Collections.unmodifiableSet(classes);
+    }
+
+    Set<OWLNamedIndividual> getIndividuals() {
+        return Collections.unmodifiableSet(individuals);
+    }
+
+    Set<OWLObjectProperty> getObjectProperties() {
+        return Collections.unmodifiableSet(objectProperties);
+    }
+
+    Set<OWLDataProperty> getDataProperties() {
+        return Collections.unmodifiableSet(dataProperties);
+    }
+
+    Set<OWLAnnotationProperty> getAnnotationProperties() {
+        return Collections.unmodifiableSet(annotationProperties);
+    }
+
+    /**
+     * Test whether an IRI denotes an entity of a kind in the signature.
+     *
+     * @param kind One of the kinds of {@link EntityKindMap}.
+     */
+    boolean isDeclared(IRI iri, int kind) {
+        return kinds.is(iri, kind);
+    }
+}
@@ -0,0 +1,35 @@
+package de.derivo.sparqldlapi.impl;
+
+/**
+ * The leaf of every atom chain: produces exactly one (usually empty) binding
+ * that the atoms above it extend.
+ */
+class SingletonOperator implements QueryOperator {
+
+    private final QueryBindingImpl binding;
+
+    private boolean consumed;
+
+    SingletonOperator(QueryBindingImpl binding) {
+        this.binding = binding;
+    }
+
+    @Override
+    public void open() {
+        consumed = false;
+    }
+
+    @Override
+    public QueryBindingImpl next() {
+        if (consumed) {
+            return null;
+        }
+        consumed = true;
+        return binding;
+    }
+
+    @Override
+    public void close() {
+        consumed = true;
+    }
+}
@@ -0,0 +1,61 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+/**
+ * Implements OFFSET and LIMIT.  The first solutions of the input are skipped and no
+ * solutions are pulled from the input anymore once the limit has been reached, so
+ * the evaluation stops after offset + limit solutions.
+ */
+class SliceOperator implements QueryOperator {
+
+    private final QueryOperator input;
+
+    private final int offset;
+
+    private final int limit;
+
+    private int skipped;
+
+    private int returned;
+
+    /**
+     * @param offset The number of solutions to skip.
+     * @param limit  The maximum number of solutions or -1 for no limit.
+     */
+    SliceOperator(QueryOperator input, int offset, int limit) {
+        this.input = input;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        skipped = 0;
+        returned = 0;
+        input.open();
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        if (limit >= 0 && returned >= limit) {
+            return null;
+        }
+        while (skipped < offset) {
+            if (input.next() == null) {
+                return null;
+            }
+            skipped++;
+        }
+        QueryBindingImpl binding = input.next();
+        if (binding != null) {
+            returned++;
+        }
+        return binding;
+    }
+
+    @Override
+    public void close() {
+        input.close();
+    }
+}
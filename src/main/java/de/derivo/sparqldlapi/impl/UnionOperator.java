@@ -0,0 +1,53 @@
+package de.derivo.sparqldlapi.impl;
+
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+
+import java.util.List;
+
+/**
+ * Concatenates the solutions of the groups of a query (WHERE {} OR WHERE {} ...).
+ * The groups are opened one after another, so a group is not evaluated before
+ * all solutions of the previous groups have been pulled.
+ */
+class UnionOperator implements QueryOperator {
+
+    private final List<QueryOperator> inputs;
+
+    private int current;
+
+    UnionOperator(List<QueryOperator> inputs) {
+        this.inputs = inputs;
+    }
+
+    @Override
+    public void open() throws QueryEngineException {
+        current = 0;
+        if (!inputs.isEmpty()) {
+            inputs.get(0).open();
+        }
+    }
+
+    @Override
+    public QueryBindingImpl next() throws QueryEngineException {
+        while (current < inputs.size()) {
+            QueryBindingImpl binding = inputs.get(current).next();
+            if (binding != null) {
+                return binding;
+            }
+            inputs.get(current).close();
+            current++;
+            if (current < inputs.size()) {
+                inputs.get(current).open();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (current < inputs.size()) {
+            inputs.get(current).close();
+        }
+        current = inputs.size();
+    }
+}
@@ -0,0 +1,92 @@
+package de.derivo.sparqldlapi.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.derivo.sparqldlapi.QueryArgument;
+
+/**
+ * Assigns dense slot numbers to the variables of a query.
+ * The parser registers every variable of a query when it is read, so all bindings of
+ * the query can store their values in arrays indexed by these slots.
+ */
+public class VarTable
+{
+	private final Map<QueryArgument, Integer> slots;
+	private final List<QueryArgument> vars;
+
+	public VarTable()
+	{
+		slots = new HashMap<QueryArgument, Integer>();
+		vars = new ArrayList<QueryArgument>();
+	}
+
+	private VarTable(VarTable table)
+	{
+		slots = new HashMap<QueryArgument, Integer>(table.slots);
+		vars = new ArrayList<QueryArgument>(table.vars);
+	}
+
+	/**
+	 * Register an argument and get its slot.
+	 * Arguments that have already been registered keep their slot.
+	 *
+	 * @param arg
+	 * @return The slot of the argument.
+	 */
+	public int add(QueryArgument arg)
+	{
+		Integer slot = slots.get(arg);
+		if(slot == null) {
+			slot = vars.size();
+			slots.put(arg, slot);
+			vars.add(arg);
+		}
+		return slot;
+	}
+
+	/**
+	 * Get the slot of an argument.
+	 *
+	 * @param arg
+	 * @return The slot or -1 if the argument has not been registered.
+	 */
+	public int slot(QueryArgument arg)
+	{
+		Integer slot = slots.get(arg);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Get the argument that has been assigned the given slot.
+	 *
+	 * @param slot
+	 * @return
+	 */
+	public QueryArgument get(int slot)
+	{
+		return vars.get(slot);
+	}
+
+	/**
+	 * Get the number of slots.
+	 *
+	 * @return
+	 */
+	public int size()
+	{
+		return vars.size();
+	}
+
+	/**
+	 * Create a copy of this table that can be extended independently.
+	 *
+	 * @return
+	 */
+	public VarTable copy()
+	{
+		return new VarTable(this);
+	}
+}
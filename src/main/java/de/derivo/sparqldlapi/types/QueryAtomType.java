@@ -25,6 +25,9 @@ public enum QueryAtomType {
     DIRECT_TYPE("DirectType"),
     STRICT_SUB_PROPERTY_OF("StrictSubPropertyOf"), DIRECT_SUB_PROPERTY_OF("DirectSubPropertyOf"),
 
+    /* full-text search extension */
+    TEXT_MATCH("TextMatch"),
+
     UKNOWN;
 
     private final String syntax;
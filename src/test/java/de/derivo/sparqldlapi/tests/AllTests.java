@@ -18,7 +18,8 @@ import org.junit.runners.Suite.SuiteClasses;
 	QueryParserTest.class,
 	QueryBindingTest.class,
 	QueryResultTest.class,
-	QueryEngineStrictModeTest.class
+	QueryEngineStrictModeTest.class,
+	QueryEngineTest.class
 })
 public class AllTests 
 {}
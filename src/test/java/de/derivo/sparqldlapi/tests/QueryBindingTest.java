@@ -17,6 +17,7 @@ import org.junit.Test;
 import de.derivo.sparqldlapi.QueryArgument;
 import de.derivo.sparqldlapi.QueryBinding;
 import de.derivo.sparqldlapi.impl.QueryBindingImpl;
+import de.derivo.sparqldlapi.impl.VarTable;
 import de.derivo.sparqldlapi.types.QueryArgumentType;
 
 /**
@@ -147,4 +148,71 @@ public class QueryBindingTest
 		binding2.set(varArg, uriArg2);
 		assertFalse(((QueryBinding)binding1).hashCode() == ((QueryBinding)binding2).hashCode());
 	}
+	
+	@Test
+	public void testCloneIsIndependent() 
+	{
+		QueryBindingImpl binding = new QueryBindingImpl();
+		binding.set(varArg, uriArg);
+		QueryBindingImpl clone = binding.clone();
+		clone.set(varArg2, uriArg2);
+		binding.set(varArg, uriArg2);
+		assertEquals(uriArg, clone.get(varArg));
+		assertFalse(binding.isBound(varArg2));
+		assertEquals(1, binding.size());
+		assertEquals(2, clone.size());
+	}
+	
+	@Test
+	public void testCloneDoesNotChangeSource() 
+	{
+		QueryBindingImpl binding = new QueryBindingImpl();
+		binding.set(varArg, uriArg);
+		VarTable table = binding.getVarTable();
+		QueryBindingImpl clone = binding.clone();
+		// the source keeps extending its own table, which the clone does not see
+		binding.set(varArg2, uriArg2);
+		assertSame(table, binding.getVarTable());
+		assertNotSame(table, clone.getVarTable());
+		assertEquals(-1, clone.getVarTable().slot(varArg2));
+		assertFalse(clone.isBound(varArg2));
+		// a clone of a binding on a shared table shares it until it has to extend it
+		QueryBindingImpl shared = new QueryBindingImpl(table);
+		assertSame(table, shared.clone().getVarTable());
+		assertSame(table, shared.cloneAndFilter(new HashSet<QueryArgument>()).getVarTable());
+	}
+	
+	@Test
+	public void testVarTableSlots() 
+	{
+		VarTable table = new VarTable();
+		assertEquals(0, table.add(varArg));
+		assertEquals(1, table.add(varArg2));
+		assertEquals(0, table.add(varArg));
+		QueryBindingImpl binding = new QueryBindingImpl(table);
+		binding.set(1, uriArg);
+		assertEquals(uriArg, binding.get(varArg2));
+		// arguments that are not in the table do not change the shared table
+		binding.set(uriArg, uriArg2);
+		assertEquals(uriArg2, binding.get(uriArg));
+		assertEquals(2, table.size());
+		assertEquals(-1, table.slot(uriArg));
+	}
+	
+	@Test
+	public void testEqualsWithDifferentTables() 
+	{
+		VarTable table = new VarTable();
+		table.add(varArg2);
+		table.add(varArg);
+		QueryBindingImpl binding1 = new QueryBindingImpl(table);
+		QueryBindingImpl binding2 = new QueryBindingImpl();
+		binding1.set(varArg, uriArg);
+		binding1.set(varArg2, uriArg2);
+		binding2.set(varArg, uriArg);
+		binding2.set(varArg2, uriArg2);
+		assertEquals(binding1, binding2);
+		assertEquals(binding1.hashCode(), binding2.hashCode());
+		assertEquals(binding1.getBoundArgs(), binding2.getBoundArgs());
+	}
 }
@@ -64,6 +64,9 @@ public class QueryEngineStrictModeTest
 	@After
 	public void tearDown()
 	{
+		if(engine != null) {
+			engine.dispose();
+		}
 		engine = null;
 	}
 	
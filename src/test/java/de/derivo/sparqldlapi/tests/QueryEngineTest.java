@@ -0,0 +1,1118 @@
+package de.derivo.sparqldlapi.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.BufferingMode;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.semanticweb.owlapi.reasoner.impl.OWLNamedIndividualNodeSet;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasoner;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+
+import de.derivo.sparqldlapi.Query;
+import de.derivo.sparqldlapi.QueryArgument;
+import de.derivo.sparqldlapi.QueryAtom;
+import de.derivo.sparqldlapi.QueryBinding;
+import de.derivo.sparqldlapi.QueryBindingIterator;
+import de.derivo.sparqldlapi.QueryCursor;
+import de.derivo.sparqldlapi.QueryEngine;
+import de.derivo.sparqldlapi.QueryResult;
+import de.derivo.sparqldlapi.Var;
+import de.derivo.sparqldlapi.exceptions.QueryEngineException;
+import de.derivo.sparqldlapi.exceptions.QueryParserException;
+import de.derivo.sparqldlapi.impl.CachingReasoner;
+import de.derivo.sparqldlapi.impl.QueryAtomGroupImpl;
+import de.derivo.sparqldlapi.impl.QueryEngineImpl;
+import de.derivo.sparqldlapi.impl.QueryImpl;
+import de.derivo.sparqldlapi.types.QueryAtomType;
+import de.derivo.sparqldlapi.types.QueryType;
+
+/**
+ * Tests for the evaluation of queries against a small in-memory ontology.
+ */
+public class QueryEngineTest
+{
+	private static final String NS = "http://example.com/test#";
+	private static final OWLDataFactory df = OWLManager.getOWLDataFactory();
+	private static OWLOntologyManager manager;
+	private static OWLOntology ontology;
+	private static OWLReasoner reasoner;
+	private QueryEngine engine;
+	private final List<QueryEngine> engines = new ArrayList<QueryEngine>();
+
+	@BeforeClass
+	public static void oneTimeSetUp()
+		throws OWLOntologyCreationException
+	{
+		manager = OWLManager.createOWLOntologyManager();
+		ontology = manager.createOntology(IRI.create("http://example.com/test"));
+
+		OWLClass drug = df.getOWLClass(IRI.create(NS + "Drug"));
+		OWLClass painkiller = df.getOWLClass(IRI.create(NS + "Painkiller"));
+		OWLClass company = df.getOWLClass(IRI.create(NS + "Company"));
+		OWLObjectProperty madeBy = df.getOWLObjectProperty(IRI.create(NS + "madeBy"));
+		OWLObjectProperty relatedTo = df.getOWLObjectProperty(IRI.create(NS + "relatedTo"));
+		OWLNamedIndividual aspirin = df.getOWLNamedIndividual(IRI.create(NS + "aspirin"));
+		OWLNamedIndividual morphine = df.getOWLNamedIndividual(IRI.create(NS + "morphine"));
+		OWLNamedIndividual bayer = df.getOWLNamedIndividual(IRI.create(NS + "bayer"));
+
+		manager.addAxiom(ontology, df.getOWLSubClassOfAxiom(painkiller, drug));
+		manager.addAxiom(ontology, df.getOWLDeclarationAxiom(company));
+		manager.addAxiom(ontology, df.getOWLSubObjectPropertyOfAxiom(madeBy, relatedTo));
+		manager.addAxiom(ontology, df.getOWLClassAssertionAxiom(painkiller, aspirin));
+		manager.addAxiom(ontology, df.getOWLClassAssertionAxiom(painkiller, morphine));
+		manager.addAxiom(ontology, df.getOWLClassAssertionAxiom(company, bayer));
+		manager.addAxiom(ontology, df.getOWLObjectPropertyAssertionAxiom(madeBy, aspirin, bayer));
+
+		reasoner = new StructuralReasonerFactory().createReasoner(ontology);
+		reasoner.precomputeInferences();
+	}
+
+	@Before
+	public void setUp()
+	{
+		engine = QueryEngine.create(manager, reasoner);
+	}
+
+	@After
+	public void tearDown()
+	{
+		engine.dispose();
+		for(QueryEngine e : engines) {
+			e.dispose();
+		}
+	}
+
+	/**
+	 * Creates a fresh ontology for the tests that change it or that need axioms of their own.
+	 */
+	private static OWLOntology createOntology(OWLAxiom... axioms)
+		throws OWLOntologyCreationException
+	{
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLOntology o = m.createOntology();
+		m.addAxioms(o, new HashSet<OWLAxiom>(Arrays.asList(axioms)));
+		return o;
+	}
+
+	/**
+	 * Creates an engine over the root ontology of the reasoner that is disposed after the test.
+	 */
+	private QueryEngineImpl createEngine(OWLReasoner r)
+	{
+		QueryEngineImpl e = new QueryEngineImpl(r.getRootOntology().getOWLOntologyManager(), r);
+		engines.add(e);
+		return e;
+	}
+
+	private static OWLClass cls(String name)
+	{
+		return df.getOWLClass(IRI.create(NS + name));
+	}
+
+	private static OWLNamedIndividual individual(String name)
+	{
+		return df.getOWLNamedIndividual(IRI.create(NS + name));
+	}
+
+	private static OWLObjectProperty objectProperty(String name)
+	{
+		return df.getOWLObjectProperty(IRI.create(NS + name));
+	}
+
+	private Set<String> values(QueryResult result, String var)
+	{
+		Set<String> values = new HashSet<String>();
+		for(QueryBinding binding : result) {
+			values.add(binding.get(QueryArgument.newVar(new Var(var))).getValueAsString());
+		}
+		return values;
+	}
+
+	private Set<QueryBinding> bindings(QueryResult result)
+	{
+		Set<QueryBinding> bindings = new HashSet<QueryBinding>();
+		for(QueryBinding binding : result) {
+			bindings.add(binding);
+		}
+		return bindings;
+	}
+
+	private QueryResult execute(String query)
+		throws QueryParserException, QueryEngineException
+	{
+		return execute(engine, query);
+	}
+
+	private static QueryResult execute(QueryEngine e, String query)
+		throws QueryParserException, QueryEngineException
+	{
+		return e.execute(Query.create("PREFIX t: <" + NS + ">\nPREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n" + query));
+	}
+
+	@Test
+	public void testJoin()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult result = execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, ?y) }");
+		assertEquals(1, result.size());
+		assertEquals(NS + "aspirin", result.get(0).get(QueryArgument.newVar(new Var("x"))).getValueAsString());
+		assertEquals(NS + "bayer", result.get(0).get(QueryArgument.newVar(new Var("y"))).getValueAsString());
+	}
+
+	@Test
+	public void testProduct()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult result = execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }");
+		assertEquals(2, result.size());
+		assertEquals(2, values(result, "x").size());
+	}
+
+	@Test
+	public void testUnion()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult result = execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company) }");
+		assertEquals(3, result.size());
+	}
+
+	@Test
+	public void testDistinct()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult result = execute("SELECT DISTINCT ?c WHERE { Type(?x, ?c) }");
+		assertEquals(result.size(), values(result, "c").size());
+		assertTrue(values(result, "c").contains(NS + "Painkiller"));
+	}
+
+	@Test
+	public void testAsk()
+		throws QueryParserException, QueryEngineException
+	{
+		assertTrue(execute("ASK { Type(t:aspirin, t:Painkiller) }").ask());
+		assertFalse(execute("ASK { Type(t:bayer, t:Painkiller) }").ask());
+		assertFalse(execute("SELECT DISTINCT ?x WHERE { PropertyValue(t:bayer, t:madeBy, ?x) }").ask());
+	}
+
+	@Test
+	public void testAskUnion()
+		throws QueryParserException, QueryEngineException
+	{
+		assertTrue(execute("ASK { Type(t:bayer, t:Painkiller) } OR WHERE { Type(t:bayer, t:Company) }").ask());
+		assertTrue(execute("ASK { Type(?x, t:Painkiller), Type(?y, t:Company) }").ask());
+		assertFalse(execute("ASK { Type(?x, t:Painkiller), PropertyValue(t:bayer, t:madeBy, ?y) }").ask());
+		assertEquals(0, execute("ASK { Type(?x, t:Painkiller) }").size());
+	}
+
+	@Test
+	public void testLimitOffset()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult all = execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company), Class(?y) }");
+		QueryResult page = execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company), Class(?y) } LIMIT 3 OFFSET 1");
+		assertEquals(3, page.size());
+		for(int i = 0; i < page.size(); i++) {
+			assertEquals(all.get(i + 1), page.get(i));
+		}
+		assertEquals(0, execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } LIMIT 0").size());
+		assertEquals(0, execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } OFFSET 5").size());
+		for(String modifier : new String[] { "LIMIT", "OFFSET" }) {
+			try {
+				execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } " + modifier);
+				fail("A number is missing after " + modifier + ".");
+			}
+			catch(QueryParserException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testSubPropertyOfWithUnboundSubProperty()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult result = execute("SELECT ?p WHERE { SubPropertyOf(?p, t:relatedTo) }");
+		assertTrue(result.ask());
+		assertTrue(values(result, "p").contains(NS + "madeBy"));
+	}
+
+	@Test
+	public void testIterate()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryBindingIterator it = engine.iterate(Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { Type(?x, t:Painkiller) }"));
+		Set<QueryArgument> seen = new HashSet<QueryArgument>();
+		while(it.hasNext()) {
+			seen.add(it.next().get(QueryArgument.newVar(new Var("x"))));
+		}
+		it.close();
+		assertEquals(2, seen.size());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testExecuteStreaming()
+		throws QueryParserException, QueryEngineException
+	{
+		Query query = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company) }");
+		try(QueryCursor cursor = engine.executeStreaming(query)) {
+			assertTrue(cursor.ask());
+			assertEquals(3, cursor.stream().count());
+		}
+		try(QueryCursor cursor = engine.executeStreaming(query)) {
+			assertEquals(engine.execute(query).size(), cursor.size());
+			assertEquals(3, cursor.stream().count());
+		}
+		try(QueryCursor cursor = engine.executeStreaming(query)) {
+			assertNotNull(cursor.stream().findFirst().orElse(null));
+		}
+	}
+
+	@Test
+	public void testExecuteStreamingAsk()
+		throws QueryParserException, QueryEngineException
+	{
+		try(QueryCursor cursor = engine.executeStreaming(Query.create("PREFIX t: <" + NS + ">\nASK { Type(t:bayer, t:Painkiller) }"))) {
+			assertFalse(cursor.ask());
+			assertEquals(0, cursor.stream().count());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testExecuteStreamingMaterializeAfterStreaming()
+		throws QueryParserException, QueryEngineException
+	{
+		try(QueryCursor cursor = engine.executeStreaming(Query.create("SELECT ?c WHERE { Class(?c) }"))) {
+			cursor.iterator().next();
+			cursor.size();
+		}
+	}
+
+	@Test
+	public void testIterateClosedEarly()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryBindingIterator it = engine.iterate(Query.create("SELECT ?c WHERE { Class(?c) }"));
+		assertTrue(it.hasNext());
+		it.next();
+		it.close();
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testProgrammaticQuery()
+		throws QueryParserException, QueryEngineException
+	{
+		// the variables of this query have not been registered by the parser
+		QueryArgument x = QueryArgument.newVar(new Var("x"));
+		QueryArgument y = QueryArgument.newVar(new Var("y"));
+		QueryImpl query = new QueryImpl(QueryType.SELECT);
+		query.addResultVar(y);
+		QueryAtomGroupImpl group = new QueryAtomGroupImpl();
+		group.addAtom(new QueryAtom(QueryAtomType.TYPE, x, QueryArgument.newURI(IRI.create(NS + "Painkiller"))));
+		group.addAtom(new QueryAtom(QueryAtomType.PROPERTY_VALUE, x, QueryArgument.newURI(IRI.create(NS + "madeBy")), y));
+		query.addAtomGroup(group);
+		QueryResult result = engine.execute(query);
+		assertEquals(1, result.size());
+		assertEquals(NS + "bayer", result.get(0).get(y).getValueAsString());
+		assertFalse(result.get(0).isBound(x));
+	}
+
+	@Test
+	public void testBatchEvaluation()
+		throws QueryParserException, QueryEngineException
+	{
+		String[] queries = {
+			"SELECT ?x ?y WHERE { Type(?x, t:Drug), PropertyValue(?x, t:madeBy, ?y), Type(?y, t:Company) }",
+			"SELECT ?x ?c WHERE { Type(?x, t:Painkiller), Type(?x, ?c), SubClassOf(?c, t:Drug) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) } OFFSET 1",
+		};
+		QueryEngineImpl batchEngine = createEngine(reasoner);
+		batchEngine.setBatchSize(2);
+		for(String query : queries) {
+			Query q = Query.create("PREFIX t: <" + NS + ">\n" + query);
+			QueryResult expected = engine.execute(q);
+			QueryResult result = batchEngine.execute(q);
+			assertEquals(expected.size(), result.size());
+			for(int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i), result.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testHashJoin()
+		throws QueryParserException, QueryEngineException
+	{
+		// strict mode always joins by binding, so both plans have to agree
+		QueryEngine bindJoinEngine = QueryEngine.create(manager, reasoner, true);
+		String[] queries = {
+			"SELECT ?x WHERE { Type(?x, t:Painkiller), Type(?x, t:Painkiller) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, ?y), Type(?y, t:Company) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }",
+		};
+		for(String query : queries) {
+			Query q = Query.create("PREFIX t: <" + NS + ">\n" + query);
+			QueryResult expected = bindJoinEngine.execute(q);
+			QueryResult result = engine.execute(q);
+			assertEquals(expected.size(), result.size());
+			for(QueryBinding binding : expected) {
+				assertTrue(result.stream().anyMatch(binding::equals));
+			}
+		}
+		bindJoinEngine.dispose();
+		assertEquals(1, execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company), PropertyValue(?x, t:madeBy, ?y) }").size());
+	}
+
+	@Test
+	public void testTypeIntersection()
+		throws QueryParserException, QueryEngineException
+	{
+		// strict mode evaluates the atoms one by one, so both have to agree
+		QueryEngine atomEngine = QueryEngine.create(manager, reasoner, true);
+		String[] queries = {
+			"SELECT ?x WHERE { Type(?x, t:Painkiller), DirectType(?x, t:Painkiller) }",
+			"SELECT ?x WHERE { Type(?x, t:Painkiller), Type(?x, t:Company) }",
+			"SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y), Type(?x, t:Painkiller), DirectType(?x, t:Painkiller) }",
+		};
+		for(String query : queries) {
+			Query q = Query.create("PREFIX t: <" + NS + ">\n" + query);
+			QueryResult expected = atomEngine.execute(q);
+			QueryResult result = engine.execute(q);
+			assertEquals(expected.size(), result.size());
+			for(QueryBinding binding : expected) {
+				assertTrue(result.stream().anyMatch(binding::equals));
+			}
+		}
+		atomEngine.dispose();
+		assertEquals(2, execute("SELECT ?x WHERE { Type(?x, t:Painkiller), DirectType(?x, t:Painkiller) }").size());
+		// the intersection takes the instances of the reasoner as they are, including the inferred instances
+		// of Drug that the structural reasoner does not entail one by one
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "aspirin", NS + "morphine")),
+			values(execute("SELECT ?x WHERE { Type(?x, t:Painkiller), Type(?x, t:Drug) }"), "x"));
+	}
+
+	@Test
+	public void testPropertyValueWithUnboundSubject()
+		throws QueryParserException, QueryEngineException
+	{
+		assertEquals(Collections.singleton(NS + "aspirin"),
+			values(execute("SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:bayer) }"), "x"));
+		assertEquals(0, execute("SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:aspirin) }").size());
+		QueryResult result = execute("SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y) }");
+		assertEquals(1, result.size());
+		assertEquals(Collections.singleton(NS + "bayer"), values(result, "y"));
+		assertEquals(0, execute("SELECT ?x WHERE { PropertyValue(?x, t:madeBy, ?x) }").size());
+	}
+
+	@Test
+	public void testPropertyValueInference()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		QueryEngineImpl e = createEngine(reasoner);
+		e.setPropertyValueInference(false);
+		for(String query : new String[] {
+			"SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:bayer) }",
+			"SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y) }",
+			"SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:aspirin) }",
+		}) {
+			assertEquals(bindings(execute(query)), bindings(execute(e, query)));
+		}
+
+		// the asserted values follow the changes of the ontology
+		OWLOntology o = createOntology(df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("aspirin"), individual("bayer")));
+		e = createEngine(new StructuralReasonerFactory().createNonBufferingReasoner(o));
+		e.setPropertyValueInference(false);
+		assertEquals(1, execute(e, "SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:bayer) }").size());
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("morphine"), individual("bayer")));
+		assertEquals(2, execute(e, "SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:bayer) }").size());
+		o.getOWLOntologyManager().removeAxiom(o, df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("aspirin"), individual("bayer")));
+		assertEquals(Collections.singleton(NS + "morphine"),
+			values(execute(e, "SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y) }"), "x"));
+	}
+
+	/**
+	 * A reasoner that also infers the values of the sub properties of a property.
+	 */
+	private static class SubPropertyReasoner extends StructuralReasoner
+	{
+		SubPropertyReasoner(OWLOntology o)
+		{
+			super(o, new SimpleConfiguration(), BufferingMode.NON_BUFFERING);
+		}
+
+		@Override
+		public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe)
+		{
+			OWLNamedIndividualNodeSet values = new OWLNamedIndividualNodeSet();
+			values.addAllNodes(super.getObjectPropertyValues(ind, pe).getNodes());
+			for(OWLObjectPropertyExpression sub : getSubObjectProperties(pe, false).getFlattened()) {
+				if(!sub.isOWLBottomObjectProperty()) {
+					values.addAllNodes(super.getObjectPropertyValues(ind, sub).getNodes());
+				}
+			}
+			return values;
+		}
+	}
+
+	@Test
+	public void testPropertyValueEntailment()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		// relatedTo(aspirin, bayer) is only inferred from madeBy(aspirin, bayer)
+		OWLOntology o = createOntology(df.getOWLSubObjectPropertyOfAxiom(objectProperty("madeBy"), objectProperty("relatedTo")),
+			df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")),
+			df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("aspirin"), individual("bayer")));
+		OWLReasoner r = new SubPropertyReasoner(o);
+		QueryEngineImpl e = createEngine(r);
+		QueryEngineImpl batch = createEngine(r);
+		batch.setBatchSize(4);
+		String[] queries = {
+			"SELECT ?x WHERE { PropertyValue(?x, t:relatedTo, t:bayer) }",
+			"SELECT ?x ?y WHERE { PropertyValue(?x, t:relatedTo, ?y) }",
+			"SELECT ?x WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:relatedTo, t:bayer) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:relatedTo, ?y) }",
+		};
+		// the entailed values are found whichever atom is evaluated first
+		for(String query : queries) {
+			assertEquals(query, Collections.singleton(NS + "aspirin"), values(execute(e, query), "x"));
+			assertEquals(query, Collections.singleton(NS + "aspirin"), values(execute(batch, query), "x"));
+		}
+		assertTrue(execute(e, "ASK { PropertyValue(t:aspirin, t:relatedTo, t:bayer) }").ask());
+
+		// only the asserted values without inference, for every atom alike
+		e.setPropertyValueInference(false);
+		batch.setPropertyValueInference(false);
+		for(String query : queries) {
+			assertEquals(query, 0, execute(e, query).size());
+			assertEquals(query, 0, execute(batch, query).size());
+		}
+		assertFalse(execute(e, "ASK { PropertyValue(t:aspirin, t:relatedTo, t:bayer) }").ask());
+		assertEquals(1, execute(e, "SELECT ?x WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, t:bayer) }").size());
+	}
+
+	@Test
+	public void testOntologyChangesAfterCreation()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLDeclarationAxiom(cls("Painkiller")),
+			df.getOWLDeclarationAxiom(objectProperty("madeBy")));
+		OWLReasoner r = new StructuralReasonerFactory().createReasoner(o);
+		QueryEngineImpl e = createEngine(r);
+		for(int i = 0; i < 10; i++) {
+			o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("drug" + i)));
+			if(i % 2 == 0) {
+				o.getOWLOntologyManager().addAxiom(o,
+					df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("drug" + i), individual("bayer")));
+			}
+		}
+		r.flush();
+		assertEquals(5, execute(e, "SELECT ?x WHERE { PropertyValue(?x, t:madeBy, t:bayer), Type(?x, t:Painkiller) }").size());
+	}
+
+	@Test
+	public void testArgumentChecking()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryEngine strictEngine = QueryEngine.create(manager, reasoner, true);
+		String prefix = "PREFIX t: <" + NS + ">\n";
+		assertTrue(strictEngine.execute(Query.create(prefix + "ASK { Type(t:aspirin, t:Painkiller) }")).ask());
+		assertTrue(strictEngine.execute(Query.create(prefix + "ASK { PropertyValue(t:aspirin, t:madeBy, t:bayer) }")).ask());
+		assertFalse(execute("ASK { Type(t:Painkiller, t:aspirin) }").ask());
+		try {
+			strictEngine.execute(Query.create(prefix + "ASK { Type(t:Painkiller, t:aspirin) }"));
+			fail("An individual is not a class.");
+		}
+		catch(QueryEngineException e) {
+			// expected
+		}
+		strictEngine.dispose();
+	}
+
+	@Test
+	public void testAnnotationWithUnboundSubject()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLAnnotationProperty altLabel = df.getOWLAnnotationProperty(IRI.create(NS + "altLabel"));
+		OWLOntology o = createOntology(df.getOWLDeclarationAxiom(altLabel),
+			df.getOWLDeclarationAxiom(individual("aspirin")),
+			df.getOWLDeclarationAxiom(individual("morphine")),
+			df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), IRI.create(NS + "aspirin"), df.getOWLLiteral("Aspirin", "")),
+			df.getOWLAnnotationAssertionAxiom(altLabel, IRI.create(NS + "aspirin"), df.getOWLLiteral("ASA", "")),
+			df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), IRI.create(NS + "morphine"), df.getOWLLiteral("Morphine", "")),
+			df.getOWLAnnotationAssertionAxiom(altLabel, IRI.create(NS + "morphine"), df.getOWLLiteral("Aspirin", "")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createReasoner(o));
+		QueryResult result = execute(e, "SELECT ?s WHERE { Annotation(?s, rdfs:label, \"Aspirin\") }");
+		assertEquals(Collections.singleton(NS + "aspirin"), values(result, "s"));
+		result = execute(e, "SELECT ?s ?v WHERE { Annotation(?s, t:altLabel, ?v) }");
+		assertEquals(new HashSet<String>(Arrays.asList("ASA", "Aspirin")), values(result, "v"));
+		result = execute(e, "SELECT ?s ?p WHERE { Annotation(?s, ?p, \"Aspirin\") }");
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "aspirin", NS + "morphine")), values(result, "s"));
+		assertEquals(0, execute(e, "SELECT ?s WHERE { Annotation(?s, t:altLabel, \"Morphine\") }").size());
+	}
+
+	@Test
+	public void testTextMatch()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLAnnotationProperty altLabel = df.getOWLAnnotationProperty(IRI.create(NS + "altLabel"));
+		OWLOntology o = createOntology(df.getOWLDeclarationAxiom(altLabel),
+			df.getOWLDeclarationAxiom(individual("aspirin")),
+			df.getOWLDeclarationAxiom(individual("morphine")),
+			df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), IRI.create(NS + "aspirin"), df.getOWLLiteral("Aspirin Tablet", "en")),
+			df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), IRI.create(NS + "aspirin"), df.getOWLLiteral("Aspirin-Tablette", "de")),
+			df.getOWLAnnotationAssertionAxiom(altLabel, IRI.create(NS + "aspirin"), df.getOWLLiteral("acetylsalicylic acid tablet")),
+			df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), IRI.create(NS + "morphine"), df.getOWLLiteral("Morphine tablet", "en")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createReasoner(o));
+		QueryResult result = execute(e, "SELECT ?s WHERE { TextMatch(?s, rdfs:label, \"tablet aspirin\") }");
+		assertEquals(Collections.singleton(NS + "aspirin"), values(result, "s"));
+		assertEquals(1, result.size());
+		result = execute(e, "SELECT ?s WHERE { TextMatch(?s, rdfs:label, \"TABLET\") }");
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "aspirin", NS + "morphine")), values(result, "s"));
+		result = execute(e, "SELECT ?s WHERE { TextMatch(?s, rdfs:label, \"tablette@de\") }");
+		assertEquals(Collections.singleton(NS + "aspirin"), values(result, "s"));
+		assertEquals(0, execute(e, "SELECT ?s WHERE { TextMatch(?s, rdfs:label, \"tablette@en\") }").size());
+		result = execute(e, "SELECT ?p WHERE { TextMatch(t:aspirin, ?p, \"tablet\") }");
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "altLabel", "http://www.w3.org/2000/01/rdf-schema#label")), values(result, "p"));
+		assertFalse(execute(e, "ASK { TextMatch(t:aspirin, t:altLabel, \"salicylic\") }").ask());
+		assertTrue(execute(e, "ASK { TextMatch(t:aspirin, t:altLabel, \"acetylsalicylic\") }").ask());
+	}
+
+	@Test
+	public void testSignatureChangesAfterCreation()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLDeclarationAxiom(cls("Drug")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createNonBufferingReasoner(o));
+		Query classes = Query.create("SELECT ?c WHERE { Class(?c) }");
+		Query individuals = Query.create("SELECT ?i WHERE { Individual(?i) }");
+		int size = e.execute(classes).size();
+		assertEquals(0, e.execute(individuals).size());
+
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")));
+		assertEquals(size + 1, e.execute(classes).size());
+		assertEquals(1, e.execute(individuals).size());
+		assertTrue(execute(e, "ASK { Class(t:Painkiller) }").ask());
+
+		// an IRI that is also a class stays an individual while it is removed as a class
+		OWLAxiom punning = df.getOWLDeclarationAxiom(cls("aspirin"));
+		o.getOWLOntologyManager().addAxiom(o, punning);
+		assertTrue(execute(e, "ASK { Class(t:aspirin), Individual(t:aspirin) }").ask());
+		o.getOWLOntologyManager().removeAxiom(o, punning);
+		assertFalse(execute(e, "ASK { Class(t:aspirin) }").ask());
+		assertTrue(execute(e, "ASK { Individual(t:aspirin) }").ask());
+
+		// entities leave the signature with the last axiom that mentions them
+		o.getOWLOntologyManager().removeAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")));
+		assertEquals(size, e.execute(classes).size());
+		assertEquals(0, e.execute(individuals).size());
+		assertFalse(execute(e, "ASK { Class(t:Painkiller) }").ask());
+
+		// many changes in one batch, of which every other one is taken back
+		Set<OWLAxiom> assertions = new HashSet<OWLAxiom>();
+		for(int i = 0; i < 100; i++) {
+			assertions.add(df.getOWLClassAssertionAxiom(cls("Drug"), individual("drug" + i)));
+		}
+		o.getOWLOntologyManager().addAxioms(o, assertions);
+		Set<OWLAxiom> removed = new HashSet<OWLAxiom>();
+		for(int i = 0; i < 100; i += 2) {
+			removed.add(df.getOWLClassAssertionAxiom(cls("Drug"), individual("drug" + i)));
+		}
+		o.getOWLOntologyManager().removeAxioms(o, removed);
+		assertEquals(50, e.execute(individuals).size());
+		for(int i = 0; i < 100; i++) {
+			assertEquals(i % 2 == 1, execute(e, "ASK { Individual(t:drug" + i + ") }").ask());
+		}
+	}
+
+	@Test
+	public void testConcurrentExecution()
+		throws Exception
+	{
+		String[] queries = {
+			"SELECT ?x WHERE { Type(?x, t:Painkiller), Type(?x, t:Drug) }",
+			"SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y) }",
+			"SELECT ?c WHERE { SubClassOf(?c, t:Drug) }",
+			"SELECT ?x ?c WHERE { Type(?x, ?c) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, ?p, ?y), Type(?y, t:Company) }",
+		};
+		List<Set<QueryBinding>> expected = new ArrayList<Set<QueryBinding>>();
+		for(String query : queries) {
+			expected.add(bindings(execute(query)));
+		}
+		// a fresh reasoner, so the engine fills its caches and indexes concurrently
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createReasoner(ontology));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Set<QueryBinding>>> futures = new ArrayList<Future<Set<QueryBinding>>>();
+			for(int i = 0; i < 200; i++) {
+				Query q = Query.create("PREFIX t: <" + NS + ">\n" + queries[i % queries.length]);
+				futures.add(executor.submit(() -> bindings(e.execute(q))));
+			}
+			for(int i = 0; i < futures.size(); i++) {
+				assertEquals(expected.get(i % queries.length), futures.get(i).get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelEvaluation()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		for(int i = 0; i < 100; i++) {
+			axioms.add(df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("drug" + i)));
+			axioms.add(df.getOWLObjectPropertyAssertionAxiom(objectProperty("madeBy"), individual("drug" + i), individual("company" + i % 7)));
+		}
+		OWLOntology o = createOntology(axioms.toArray(new OWLAxiom[axioms.size()]));
+		QueryEngineImpl sequential = createEngine(new StructuralReasonerFactory().createReasoner(o));
+		QueryEngineImpl parallel = createEngine(new StructuralReasonerFactory().createReasoner(o));
+		parallel.setForkJoinPool(new ForkJoinPool(4));
+		String[] queries = {
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, ?y) }",
+			"SELECT ?x ?z WHERE { PropertyValue(?x, t:madeBy, ?y), PropertyValue(?z, t:madeBy, ?y) }",
+			"SELECT ?x WHERE { Type(?x, t:Painkiller) }",
+			"ASK { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, t:company3) }",
+		};
+		for(String query : queries) {
+			QueryResult expected = execute(sequential, query);
+			QueryResult result = execute(parallel, query);
+			assertEquals(expected.ask(), result.ask());
+			assertEquals(expected.size(), result.size());
+			for(int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i), result.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentGroupsAndComponents()
+		throws Exception
+	{
+		String[] queries = {
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }",
+			"SELECT ?x ?y ?c WHERE { Type(?x, t:Painkiller), Type(?y, t:Company), SubClassOf(?c, t:Drug) }",
+			"SELECT ?x WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company) } OR WHERE { Type(?x, t:Drug) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(t:bayer, t:madeBy, ?y) }",
+			"ASK { Type(?x, t:Painkiller), Type(?y, t:Company) }",
+		};
+		QueryEngineImpl e = createEngine(reasoner);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		e.setExecutor(executor);
+		try {
+			for(String query : queries) {
+				QueryResult expected = execute(query);
+				QueryResult result = e.execute(Query.create("PREFIX t: <" + NS + ">\n" + query));
+				assertEquals(expected.ask(), result.ask());
+				assertEquals(expected.size(), result.size());
+				for(int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i), result.get(i));
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentEvaluationOnSmallPool()
+		throws Exception
+	{
+		// two groups with two components each on pools with fewer threads than components
+		String query = "SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) } " +
+			"OR WHERE { Type(?x, t:Company), Type(?y, t:Painkiller) }";
+		QueryResult expected = execute(query);
+		for(int threads = 1; threads <= 2; threads++) {
+			QueryEngineImpl e = createEngine(reasoner);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			ExecutorService caller = Executors.newSingleThreadExecutor();
+			e.setExecutor(executor);
+			try {
+				Future<QueryResult> future = caller.submit(() -> e.execute(Query.create("PREFIX t: <" + NS + ">\n" + query)));
+				QueryResult result = future.get(10, TimeUnit.SECONDS);
+				assertEquals(expected.size(), result.size());
+				for(int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i), result.get(i));
+				}
+			}
+			finally {
+				caller.shutdownNow();
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	@Test
+	public void testReasonerCache()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")));
+		OWLReasoner r = new StructuralReasonerFactory().createNonBufferingReasoner(o);
+		QueryEngineImpl e = createEngine(r);
+		Query q = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { Type(?x, t:Painkiller) }");
+		assertEquals(1, e.execute(q).size());
+		long misses = e.getCachingReasoner().getMissCount();
+		long hits = e.getCachingReasoner().getHitCount();
+		assertEquals(1, e.execute(q).size());
+		assertEquals(misses, e.getCachingReasoner().getMissCount());
+		assertTrue(e.getCachingReasoner().getHitCount() > hits);
+
+		// a change of the ontology drops the cached lookups
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("morphine")));
+		assertEquals(2, e.execute(q).size());
+		assertTrue(e.getCachingReasoner().getMissCount() > misses);
+		e.dispose();
+
+		// nothing that is looked up before a buffering reasoner is flushed is used afterwards
+		r = new StructuralReasonerFactory().createReasoner(o);
+		e = createEngine(r);
+		assertEquals(2, e.execute(q).size());
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("codeine")));
+		e.execute(q);
+		r.flush();
+		assertEquals(3, e.execute(q).size());
+	}
+
+	@Test
+	public void testConcurrentReasonerCalls()
+		throws Exception
+	{
+		// the lookup of the sub classes of Drug only returns once the sub classes of Company are looked up
+		final CountDownLatch drugLookedUp = new CountDownLatch(1);
+		final CountDownLatch companyLookedUp = new CountDownLatch(1);
+		OWLOntology o = createOntology(df.getOWLSubClassOfAxiom(cls("Painkiller"), cls("Drug")));
+		OWLReasoner r = new StructuralReasoner(o, new SimpleConfiguration(), BufferingMode.NON_BUFFERING)
+		{
+			@Override
+			public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct)
+			{
+				if(ce.equals(cls("Company"))) {
+					companyLookedUp.countDown();
+				}
+				else if(ce.equals(cls("Drug"))) {
+					drugLookedUp.countDown();
+					try {
+						if(!companyLookedUp.await(10, TimeUnit.SECONDS)) {
+							throw new IllegalStateException("The lookups have been serialized.");
+						}
+					}
+					catch(InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				return super.getSubClasses(ce, direct);
+			}
+		};
+		CachingReasoner caching = new CachingReasoner(r);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<NodeSet<OWLClass>> drug = executor.submit(() -> caching.getSubClasses(cls("Drug"), true));
+			assertTrue(drugLookedUp.await(10, TimeUnit.SECONDS));
+			caching.getSubClasses(cls("Company"), true);
+			assertTrue(drug.get(10, TimeUnit.SECONDS).containsEntity(cls("Painkiller")));
+		}
+		finally {
+			executor.shutdownNow();
+			caching.dispose();
+		}
+	}
+
+	@Test
+	public void testClassHierarchy()
+		throws QueryParserException, QueryEngineException
+	{
+		Set<OWLClass> classes = ontology.getClassesInSignature();
+		for(OWLClass sub : classes) {
+			for(OWLClass sup : classes) {
+				String args = "(<" + sub.getIRI() + ">, <" + sup.getIRI() + ">)";
+				assertEquals(reasoner.getSubClasses(sup, false).containsEntity(sub),
+					engine.execute(Query.create("ASK { StrictSubClassOf" + args + " }")).ask());
+				assertEquals(reasoner.getSubClasses(sup, true).containsEntity(sub),
+					engine.execute(Query.create("ASK { DirectSubClassOf" + args + " }")).ask());
+			}
+		}
+		Query q = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { StrictSubClassOf(t:Painkiller, ?x) }");
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "Drug", "http://www.w3.org/2002/07/owl#Thing")),
+			values(engine.execute(q), "x"));
+	}
+
+	@Test
+	public void testSubClassOfFromHierarchy()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLEquivalentClassesAxiom(cls("Analgesic"), cls("Painkiller")),
+			df.getOWLSubClassOfAxiom(cls("Painkiller"), cls("Drug")),
+			df.getOWLSubClassOfAxiom(cls("Drug"), cls("Product")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createReasoner(o));
+		// a class is a sub class of itself, of its equivalent classes and of the inferred super classes
+		assertTrue(execute(e, "ASK { SubClassOf(t:Drug, t:Drug) }").ask());
+		assertTrue(execute(e, "ASK { SubClassOf(t:Analgesic, t:Painkiller) }").ask());
+		assertTrue(execute(e, "ASK { SubClassOf(t:Painkiller, t:Analgesic) }").ask());
+		assertTrue(execute(e, "ASK { SubClassOf(t:Analgesic, t:Product) }").ask());
+		assertFalse(execute(e, "ASK { SubClassOf(t:Product, t:Drug) }").ask());
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "Analgesic", NS + "Painkiller", NS + "Drug",
+				"http://www.w3.org/2002/07/owl#Nothing")),
+			values(execute(e, "SELECT ?x WHERE { SubClassOf(?x, t:Drug) }"), "x"));
+	}
+
+	@Test
+	public void testClassHierarchyAfterChanges()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLSubClassOfAxiom(cls("Painkiller"), cls("Drug")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createNonBufferingReasoner(o));
+		assertTrue(execute(e, "ASK { StrictSubClassOf(t:Painkiller, t:Drug) }").ask());
+
+		// an assertion keeps the schema but may add classes
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Company"), individual("bayer")));
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "Drug", NS + "Painkiller", NS + "Company", "http://www.w3.org/2002/07/owl#Thing")),
+			values(execute(e, "SELECT ?x WHERE { StrictSubClassOf(<http://www.w3.org/2002/07/owl#Nothing>, ?x) }"), "x"));
+
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLSubClassOfAxiom(cls("Drug"), cls("Product")));
+		assertTrue(execute(e, "ASK { StrictSubClassOf(t:Painkiller, t:Product) }").ask());
+		assertEquals(new HashSet<String>(Arrays.asList(NS + "Drug", NS + "Painkiller", "http://www.w3.org/2002/07/owl#Nothing")),
+			values(execute(e, "SELECT ?x WHERE { StrictSubClassOf(?x, t:Product) }"), "x"));
+	}
+
+	@Test
+	public void testEntailmentCache()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")),
+			df.getOWLDeclarationAxiom(individual("morphine")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createNonBufferingReasoner(o));
+		Query q = Query.create("PREFIX t: <" + NS + ">\nASK { Type(t:morphine, t:Painkiller) }");
+		assertFalse(e.execute(q).ask());
+		assertFalse(e.execute(q).ask());
+
+		// the negative result must not survive the change
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("morphine")));
+		assertTrue(e.execute(q).ask());
+		e.setEntailmentCacheSize(0);
+		assertTrue(e.execute(q).ask());
+	}
+
+	@Test
+	public void testPropertyCharacteristics()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLTransitiveObjectPropertyAxiom(objectProperty("partOf")),
+			df.getOWLDeclarationAxiom(objectProperty("relatedTo")));
+		QueryEngineImpl e = createEngine(new StructuralReasonerFactory().createNonBufferingReasoner(o));
+		assertEquals(Collections.singleton(NS + "partOf"), values(execute(e, "SELECT ?p WHERE { Transitive(?p) }"), "p"));
+		assertTrue(execute(e, "ASK { Transitive(t:partOf) }").ask());
+		assertFalse(execute(e, "ASK { Transitive(t:relatedTo) }").ask());
+
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLTransitiveObjectPropertyAxiom(objectProperty("relatedTo")));
+		assertTrue(execute(e, "ASK { Transitive(t:relatedTo) }").ask());
+		assertEquals(2, execute(e, "SELECT ?p WHERE { Transitive(?p) }").size());
+	}
+
+	@Test
+	public void testAdaptiveOrdering()
+		throws QueryParserException, QueryEngineException
+	{
+		String[] queries = {
+			"SELECT ?x ?y WHERE { PropertyValue(?x, t:madeBy, ?y), Type(?y, t:Company), Type(?x, t:Painkiller) }",
+			"SELECT ?x ?c WHERE { Type(?x, ?c), SubClassOf(?c, t:Drug), Type(?x, t:Painkiller) }",
+			"SELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }",
+		};
+		QueryEngineImpl adaptiveEngine = createEngine(reasoner);
+		adaptiveEngine.setAdaptiveOrdering(true);
+		for(String query : queries) {
+			Query q = Query.create("PREFIX t: <" + NS + ">\n" + query);
+			QueryResult expected = engine.execute(q);
+			QueryResult result = adaptiveEngine.execute(q);
+			assertEquals(expected.size(), result.size());
+			for(QueryBinding binding : expected) {
+				assertTrue(result.stream().anyMatch(binding::equals));
+			}
+		}
+	}
+
+	@Test
+	public void testPlanCache()
+		throws QueryParserException, QueryEngineException
+	{
+		QueryResult first = execute("SELECT ?x ?y WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, ?y) }");
+		// equal after normalization, so the cached plan is used
+		QueryResult second = engine.execute(Query.create("PREFIX u: <" + NS + ">\nSELECT ?x ?y WHERE {Type(?x,u:Painkiller),\n PropertyValue(?x, u:madeBy, ?y)}"));
+		assertEquals(first.size(), second.size());
+		assertEquals(first.get(0), second.get(0));
+		QueryResult swapped = execute("SELECT ?y ?x WHERE { Type(?x, t:Painkiller), PropertyValue(?x, t:madeBy, ?y) }");
+		assertEquals(first.get(0), swapped.get(0));
+		assertEquals(3, execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company) }").size());
+		assertEquals(2, execute("SELECT ?x WHERE { Type(?x, t:Painkiller) } OR WHERE { Type(?x, t:Company) } LIMIT 2").size());
+	}
+
+	@Test
+	public void testPlanCacheSignatureChange()
+		throws QueryParserException, QueryEngineException, OWLOntologyCreationException
+	{
+		OWLOntology o = createOntology(df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("aspirin")));
+		OWLReasoner r = new StructuralReasonerFactory().createReasoner(o);
+		QueryEngineImpl e = createEngine(r);
+		Query query = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { Type(?x, t:Painkiller) }");
+		assertEquals(1, e.execute(query).size());
+		o.getOWLOntologyManager().addAxiom(o, df.getOWLClassAssertionAxiom(cls("Painkiller"), individual("morphine")));
+		r.flush();
+		assertEquals(2, e.execute(query).size());
+		e.setPlanCacheSize(0);
+		assertEquals(2, e.execute(query).size());
+	}
+
+	@Test
+	public void testExecuteAsync()
+		throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Query q = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }");
+			QueryResult expected = engine.execute(q);
+			QueryResult result = engine.executeAsync(q, executor).get();
+			assertEquals(expected.size(), result.size());
+			for(int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i), result.get(i));
+			}
+			List<QueryBinding> streamed = Collections.synchronizedList(new ArrayList<>());
+			assertTrue(engine.executeAsync(q, executor, streamed::add).get());
+			assertEquals(bindings(expected), new HashSet<>(streamed));
+			assertTrue(engine.executeAsync(Query.create("PREFIX t: <" + NS + ">\nASK { Type(?x, t:Painkiller) }"), executor, streamed::add).get());
+			assertFalse(engine.executeAsync(Query.create("PREFIX t: <" + NS + ">\nSELECT ?x WHERE { Type(?x, t:Painkiller), Type(?x, t:Company) }"), executor, streamed::add).get());
+			assertEquals(expected.size(), streamed.size());
+			
+			QueryEngine strictEngine = QueryEngine.create(manager, reasoner, true);
+			try {
+				strictEngine.executeAsync(Query.create("PREFIX t: <" + NS + ">\nASK { Type(t:Painkiller, t:aspirin) }"), executor).get();
+				fail("An individual is not a class.");
+			}
+			catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof QueryEngineException);
+			}
+			strictEngine.dispose();
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testExecuteAsyncCancel()
+		throws QueryParserException, QueryEngineException
+	{
+		Query q = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }");
+		int size = engine.execute(q).size();
+		assertTrue(size > 1);
+		
+		// cancelled before it is started
+		List<Runnable> tasks = new ArrayList<>();
+		List<QueryBinding> streamed = new ArrayList<>();
+		CompletableFuture<Boolean> future = engine.executeAsync(q, tasks::add, streamed::add);
+		assertTrue(future.cancel(true));
+		tasks.forEach(Runnable::run);
+		assertTrue(future.isCancelled());
+		assertTrue(streamed.isEmpty());
+		
+		// cancelled by the callback while it is running, also with concurrent evaluation
+		QueryEngineImpl forkJoin = createEngine(reasoner);
+		forkJoin.setForkJoinPool(ForkJoinPool.commonPool());
+		QueryEngineImpl concurrent = createEngine(reasoner);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		concurrent.setExecutor(executor);
+		try {
+			for(QueryEngine e : Arrays.asList(engine, forkJoin, concurrent)) {
+				AtomicReference<CompletableFuture<Boolean>> running = new AtomicReference<>();
+				streamed.clear();
+				tasks.clear();
+				running.set(e.executeAsync(q, tasks::add, binding -> {
+					streamed.add(binding);
+					running.get().cancel(true);
+				}));
+				tasks.forEach(Runnable::run);
+				assertTrue(running.get().isCancelled());
+				assertEquals(1, streamed.size());
+				assertFalse(Thread.currentThread().isInterrupted());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testExecuteAsyncDefault()
+		throws Exception
+	{
+		// an engine that only implements execute
+		QueryEngine e = new QueryEngine() {
+			@Override
+			public QueryResult execute(Query query)
+				throws QueryEngineException
+			{
+				return engine.execute(query);
+			}
+		};
+		Query q = Query.create("PREFIX t: <" + NS + ">\nSELECT ?x ?y WHERE { Type(?x, t:Painkiller), Type(?y, t:Company) }");
+		QueryResult expected = engine.execute(q);
+		List<Runnable> tasks = new ArrayList<>();
+		CompletableFuture<QueryResult> result = e.executeAsync(q, tasks::add);
+		List<QueryBinding> streamed = new ArrayList<>();
+		CompletableFuture<Boolean> ask = e.executeAsync(Query.create("PREFIX t: <" + NS + ">\nASK { Type(?x, t:Painkiller) }"), tasks::add, streamed::add);
+		tasks.forEach(Runnable::run);
+		assertEquals(expected.size(), result.get().size());
+		assertTrue(ask.get());
+		assertTrue(streamed.isEmpty());
+		
+		tasks.clear();
+		AtomicReference<CompletableFuture<Boolean>> running = new AtomicReference<>();
+		running.set(e.executeAsync(q, tasks::add, binding -> {
+			streamed.add(binding);
+			running.get().cancel(true);
+		}));
+		CompletableFuture<QueryResult> cancelled = e.executeAsync(q, tasks::add);
+		assertTrue(cancelled.cancel(true));
+		tasks.forEach(Runnable::run);
+		assertTrue(running.get().isCancelled());
+		assertEquals(1, streamed.size());
+		assertTrue(cancelled.isCancelled());
+	}
+}
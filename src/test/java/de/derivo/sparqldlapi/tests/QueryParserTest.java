@@ -146,4 +146,36 @@ public class QueryParserTest
 		assertEquals(query.getResultVars(), resultVars);
 		assertEquals(query.getAtomGroups().get(0).getAtoms(), atoms);
 	}
+	
+	@Test
+	public void testParseLimitOffset()
+		throws QueryParserException
+	{
+		QueryTokenizer tokenizer = new QueryTokenizerImpl();
+		QueryParser parser = new QueryParserImpl();
+		
+		Query query = parser.parse(tokenizer.tokenize(
+			"SELECT ?c WHERE { Class(?c) } OR WHERE { SubClassOf(?c, ?d) } LIMIT 10 OFFSET 20"
+		));
+		assertEquals(10, query.getLimit());
+		assertEquals(20, query.getOffset());
+		assertEquals(2, query.getAtomGroups().size());
+		
+		query = parser.parse(tokenizer.tokenize("SELECT ?c WHERE { Class(?c) } OFFSET 5"));
+		assertEquals(-1, query.getLimit());
+		assertEquals(5, query.getOffset());
+		
+		query = parser.parse(tokenizer.tokenize("SELECT ?c WHERE { Class(?c) }"));
+		assertEquals(-1, query.getLimit());
+		assertEquals(0, query.getOffset());
+	}
+	
+	@Test(expected = QueryParserException.class)
+	public void testParseLimitWithException()
+		throws QueryParserException
+	{
+		QueryTokenizer tokenizer = new QueryTokenizerImpl();
+		QueryParser parser = new QueryParserImpl();
+		parser.parse(tokenizer.tokenize("SELECT ?c WHERE { Class(?c) } LIMIT ?x"));
+	}
 }